@@ -0,0 +1,106 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A customer record with the mix of indexed and unindexed columns typical of filtered
+ * listing endpoints.
+ */
+@Entity
+@Table(indexes = {@Index(columnList = "name"), @Index(columnList = "country, status")})
+public class Customer {
+
+	public enum Status {
+		ACTIVE,
+		SUSPENDED,
+		CLOSED
+	}
+
+	@Id
+	private Long id;
+
+	private String name;
+
+	@Column(unique = true)
+	private String email;
+
+	@Enumerated(EnumType.STRING)
+	private Status status;
+
+	private String country;
+
+	private Integer age;
+
+	private BigDecimal score;
+
+	private Boolean vip;
+
+	private Instant createdAt;
+
+	public Customer() {}
+
+	public Customer(
+			Long id,
+			String name,
+			String email,
+			Status status,
+			String country,
+			Integer age,
+			BigDecimal score,
+			Boolean vip,
+			Instant createdAt) {
+		this.id = id;
+		this.name = name;
+		this.email = email;
+		this.status = status;
+		this.country = country;
+		this.age = age;
+		this.score = score;
+		this.vip = vip;
+		this.createdAt = createdAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public Integer getAge() {
+		return age;
+	}
+
+	public BigDecimal getScore() {
+		return score;
+	}
+
+	public Boolean getVip() {
+		return vip;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+}
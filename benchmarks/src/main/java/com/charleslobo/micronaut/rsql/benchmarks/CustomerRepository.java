@@ -0,0 +1,15 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.repository.AbstractRsqlRepository;
+import jakarta.persistence.EntityManager;
+
+/**
+ * The repository under benchmark, as an application would declare it.
+ */
+public class CustomerRepository extends AbstractRsqlRepository<Customer> {
+
+	public CustomerRepository(EntityManager em, RsqlCriteriaBuilder builder) {
+		super(em, builder, Customer.class);
+	}
+}
@@ -0,0 +1,78 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * An order line, filtered mostly by ranges over amounts and dates.
+ */
+@Entity
+@Table(indexes = {@Index(columnList = "customerId"), @Index(columnList = "placedAt")})
+public class PurchaseOrder {
+
+	@Id
+	private Long id;
+
+	private String reference;
+
+	private Long customerId;
+
+	private String status;
+
+	private BigDecimal amount;
+
+	private Integer quantity;
+
+	private Instant placedAt;
+
+	public PurchaseOrder() {}
+
+	public PurchaseOrder(
+			Long id,
+			String reference,
+			Long customerId,
+			String status,
+			BigDecimal amount,
+			Integer quantity,
+			Instant placedAt) {
+		this.id = id;
+		this.reference = reference;
+		this.customerId = customerId;
+		this.status = status;
+		this.amount = amount;
+		this.quantity = quantity;
+		this.placedAt = placedAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getReference() {
+		return reference;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public Integer getQuantity() {
+		return quantity;
+	}
+
+	public Instant getPlacedAt() {
+		return placedAt;
+	}
+}
@@ -0,0 +1,69 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import java.util.StringJoiner;
+import java.util.function.IntFunction;
+
+/**
+ * The corpus of filters the benchmarks run, one per shape that stresses a different part of
+ * the pipeline.
+ */
+public enum QueryShape {
+	/**
+	 * A single indexed equality, the most common filter.
+	 */
+	SIMPLE_EQUALITY(Customer.class, "status==ACTIVE"),
+	/**
+	 * A flat disjunction of 50 equalities.
+	 */
+	WIDE_OR(Customer.class, join(",", 50, i -> "country==C" + i)),
+	/**
+	 * Groups nested 20 deep, alternating AND and OR.
+	 */
+	DEEP_NESTING(Customer.class, nested(20)),
+	/**
+	 * One {@code =in=} list of 1000 ids.
+	 */
+	LARGE_IN(Customer.class, "id=in=(" + join(",", 1000, i -> Integer.toString(i)) + ")"),
+	/**
+	 * Leading, trailing and infix wildcards together.
+	 */
+	WILDCARDS(Customer.class, "name==*son*;email==*@example.com,country==U*"),
+	/**
+	 * Ranges over decimal and date columns, with a short {@code =in=}.
+	 */
+	ORDER_RANGES(
+			PurchaseOrder.class,
+			"amount=bt=(10,500);placedAt=ge=2024-01-01T00:00:00Z;status=in=(PAID,SHIPPED)");
+
+	private final Class<?> entityClass;
+	private final String rsql;
+
+	QueryShape(Class<?> entityClass, String rsql) {
+		this.entityClass = entityClass;
+		this.rsql = rsql;
+	}
+
+	public Class<?> entityClass() {
+		return entityClass;
+	}
+
+	public String rsql() {
+		return rsql;
+	}
+
+	private static String join(String separator, int count, IntFunction<String> term) {
+		StringJoiner joiner = new StringJoiner(separator);
+		for (int i = 0; i < count; i++) {
+			joiner.add(term.apply(i));
+		}
+		return joiner.toString();
+	}
+
+	private static String nested(int depth) {
+		String filter = "age=gt=18";
+		for (int i = 0; i < depth; i++) {
+			filter = "name==n" + i + (i % 2 == 0 ? ";" : ",") + "(" + filter + ")";
+		}
+		return filter;
+	}
+}
@@ -0,0 +1,106 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan;
+import cz.jirutka.rsql.parser.ast.Node;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the filter hot path against Hibernate's CriteriaBuilder, for each
+ * {@link QueryShape}. Caches are left at their defaults (disabled), so every operation pays
+ * for what it names. Run with {@code -prof gc} for the allocation rate:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar RsqlBuilderBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RsqlBuilderBenchmark {
+
+	@Param
+	private QueryShape shape;
+
+	private EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+	private RsqlCriteriaBuilder builder;
+	private String rsql;
+	private Node node;
+	private RsqlQueryPlan<?> plan;
+
+	@Setup
+	public void setUp() {
+		entityManagerFactory = Persistence.createEntityManagerFactory("benchmarks");
+		entityManager = entityManagerFactory.createEntityManager();
+		builder = new RsqlCriteriaBuilder(entityManager);
+		rsql = shape.rsql();
+		node = builder.parse(rsql);
+		plan = builder.compile(rsql, shape.entityClass());
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		entityManagerFactory.close();
+	}
+
+	/**
+	 * Parsing alone.
+	 */
+	@Benchmark
+	public Node parse() {
+		return builder.parse(rsql);
+	}
+
+	/**
+	 * Parsing, compiling and building the CriteriaQuery, as an uncached request does.
+	 */
+	@Benchmark
+	public CriteriaQuery<?> fromRsql() {
+		return builder.fromRsql(rsql, shape.entityClass());
+	}
+
+	/**
+	 * Building the predicate from an already parsed AST.
+	 */
+	@Benchmark
+	public Predicate buildPredicate() {
+		return buildPredicate(shape.entityClass());
+	}
+
+	/**
+	 * Building the CriteriaQuery from a compiled plan, as a request hitting the plan cache does.
+	 */
+	@Benchmark
+	public CriteriaQuery<?> fromPlan() {
+		return builder.fromRsql(plan);
+	}
+
+	private <T> Predicate buildPredicate(Class<T> entityClass) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		Root<T> root = cb.createQuery(entityClass).from(entityClass);
+		return builder.buildPredicate(node, root, cb, entityClass);
+	}
+}
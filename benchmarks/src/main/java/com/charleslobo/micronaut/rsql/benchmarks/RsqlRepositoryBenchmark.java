@@ -0,0 +1,139 @@
+package com.charleslobo.micronaut.rsql.benchmarks;
+
+import com.charleslobo.micronaut.rsql.RsqlConfiguration;
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link CustomerRepository} queries including SQL execution, against an in-memory
+ * H2 database seeded with {@code rows} customers. Each operation clears the persistence
+ * context afterwards, so loaded entities do not pile up between invocations.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar RsqlRepositoryBenchmark -p rows=5000000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class RsqlRepositoryBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	@Param({"1000000"})
+	private int rows;
+
+	@Param({"SIMPLE_EQUALITY", "WIDE_OR", "DEEP_NESTING", "LARGE_IN", "WILDCARDS"})
+	private QueryShape shape;
+
+	/**
+	 * Page number of the paged queries, from the first page to deep offsets.
+	 */
+	@Param({"0", "100", "10000"})
+	private int page;
+
+	/**
+	 * Whether paged queries run their count query concurrently with the data query.
+	 */
+	@Param({"false", "true"})
+	private boolean concurrentCount;
+
+	private EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+	private CustomerRepository repository;
+	private Pageable pageable;
+
+	@Setup
+	public void setUp() {
+		entityManagerFactory = Persistence.createEntityManagerFactory("benchmarks");
+		entityManager = entityManagerFactory.createEntityManager();
+		seed(entityManager, rows);
+		RsqlConfiguration configuration = new RsqlConfiguration();
+		configuration.setConcurrentCount(concurrentCount);
+		RsqlCriteriaBuilder builder = new RsqlCriteriaBuilder(entityManager, configuration);
+		repository = new CustomerRepository(entityManager, builder);
+		pageable = Pageable.from(page, PAGE_SIZE, Sort.of(Sort.Order.asc("id")));
+	}
+
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		entityManagerFactory.close();
+	}
+
+	/**
+	 * All matching customers, unpaged.
+	 */
+	@Benchmark
+	public int findByRsql() {
+		List<Customer> customers = repository.findByRsql(shape.rsql());
+		entityManager.clear();
+		return customers.size();
+	}
+
+	/**
+	 * One page, with the count query when the page does not reveal the total.
+	 */
+	@Benchmark
+	public long findPageByRsql() {
+		Page<Customer> customers = repository.findByRsql(shape.rsql(), pageable);
+		entityManager.clear();
+		return customers.getTotalSize();
+	}
+
+	/**
+	 * The count query alone.
+	 */
+	@Benchmark
+	public long countByRsql() {
+		return repository.countByRsql(shape.rsql());
+	}
+
+	/**
+	 * Inserts the customers with a single set-based statement, which loads millions of rows in
+	 * seconds. Values are spread so that every {@link QueryShape} matches a fraction of them.
+	 */
+	static void seed(EntityManager entityManager, int rows) {
+		entityManager.getTransaction().begin();
+		entityManager
+				.createNativeQuery(
+						"INSERT INTO Customer"
+								+ " (id, name, email, status, country, age, score, vip, createdAt) "
+								+ "SELECT X,"
+								+ " CASE WHEN MOD(X, 7) = 0 THEN 'Jackson ' || X ELSE 'Customer ' || X END,"
+								+ " 'user' || X"
+								+ " || CASE WHEN MOD(X, 2) = 0 THEN '@example.com' ELSE '@example.org' END,"
+								+ " CASE MOD(X, 3) WHEN 0 THEN 'ACTIVE' WHEN 1 THEN 'SUSPENDED' ELSE 'CLOSED' END,"
+								+ " 'C' || MOD(X, 200),"
+								+ " 18 + MOD(X, 80),"
+								+ " MOD(X, 1000) / 10.0,"
+								+ " MOD(X, 10) = 0,"
+								+ " DATEADD(SECOND, X, TIMESTAMP WITH TIME ZONE '2020-01-01 00:00:00+00')"
+								+ " FROM SYSTEM_RANGE(1, ?1)")
+				.setParameter(1, rows)
+				.executeUpdate();
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+}
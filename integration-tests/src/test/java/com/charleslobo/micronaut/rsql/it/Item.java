@@ -0,0 +1,50 @@
+package com.charleslobo.micronaut.rsql.it;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import java.time.LocalDateTime;
+
+@Entity
+public class Item {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    private String category;
+
+    private Integer score;
+
+    private LocalDateTime createdAt;
+
+    public Item() {}
+
+    public Item(Long id, String name, String category, Integer score, LocalDateTime createdAt) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.score = score;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,12 @@
+package com.charleslobo.micronaut.rsql.it;
+
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.repository.AbstractRsqlRepository;
+import jakarta.persistence.EntityManager;
+
+public class ItemRepository extends AbstractRsqlRepository<Item> {
+
+    public ItemRepository(EntityManager em, RsqlCriteriaBuilder builder) {
+        super(em, builder, Item.class);
+    }
+}
@@ -0,0 +1,251 @@
+package com.charleslobo.micronaut.rsql.it;
+
+import com.charleslobo.micronaut.rsql.RsqlConfiguration;
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.repository.RsqlCursors;
+import io.micronaut.data.model.CursoredPage;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.h2.tools.Server;
+import org.hibernate.Session;
+import org.hibernate.stat.SessionStatistics;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the repository against Hibernate and an H2 server. The database is reached over TCP,
+ * as a production one would be, so that connection handling matters as it does there.
+ */
+public class RsqlRepositoryIntegrationTest {
+
+    private static final int ROWS = 200_000;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final Sort BY_ID = Sort.of(Sort.Order.asc("id"));
+
+    private static Server server;
+    private static EntityManagerFactory entityManagerFactory;
+
+    private EntityManager entityManager;
+
+    @BeforeClass
+    public static void startDatabase() throws Exception {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        entityManagerFactory = Persistence.createEntityManagerFactory("integration-tests", Map.of(
+                "jakarta.persistence.jdbc.url",
+                "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:items;DB_CLOSE_DELAY=-1"));
+        seed(ROWS);
+    }
+
+    @AfterClass
+    public static void stopDatabase() {
+        entityManagerFactory.close();
+        server.stop();
+    }
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+    }
+
+    @After
+    public void tearDown() {
+        if (entityManager.getTransaction().isActive()) {
+            entityManager.getTransaction().rollback();
+        }
+        entityManager.close();
+    }
+
+    @Test
+    public void testShortPagesLeaveConcurrentCountConnectionsUsable() throws Exception {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        configuration.setConcurrentCountLimit(1);
+        RsqlCriteriaBuilder builder = new RsqlCriteriaBuilder(entityManager, configuration);
+        ItemRepository repository = new ItemRepository(entityManager, builder);
+
+        // Each page is short, so its count is cancelled while scanning the whole table
+        for (int i = 0; i < 20; i++) {
+            Page<Item> page = repository.findByRsql("score==7", Pageable.from(0, 1000, BY_ID));
+            assertEquals(ROWS / 1000, page.getTotalSize());
+            entityManager.clear();
+        }
+        assertTrue(builder.getCountPermits().tryAcquire(10, TimeUnit.SECONDS));
+
+        // The pool holds two connections, so these reuse every connection a count ran on
+        for (int i = 0; i < 4; i++) {
+            EntityManager other = entityManagerFactory.createEntityManager();
+            try {
+                other.getTransaction().begin();
+                assertEquals(ROWS, countAll(other));
+                other.getTransaction().rollback();
+            } finally {
+                other.close();
+            }
+        }
+    }
+
+    @Test
+    public void testPageTotalInsideTransactionIncludesUncommittedRows() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        ItemRepository repository = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, configuration));
+
+        entityManager.getTransaction().begin();
+        for (long id = ROWS + 1; id <= ROWS + 3; id++) {
+            entityManager.persist(new Item(id, "item " + id, "new", 0, EPOCH));
+        }
+        entityManager.flush();
+
+        Page<Item> page = repository.findByRsql("category==new", Pageable.from(0, 2, BY_ID));
+
+        assertEquals(2, page.getContent().size());
+        assertEquals(3, page.getTotalSize());
+    }
+
+    @Test
+    public void testKeysetPagesOnMicrosecondTimestampsVisitEachRowOnce() {
+        ItemRepository repository = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration()));
+        Sort byCreation = Sort.of(Sort.Order.desc("createdAt"));
+
+        Set<Long> seen = new HashSet<>();
+        String cursor = null;
+        while (true) {
+            CursoredPage<Item> page = repository.findByRsqlAfter("score=lt=10", byCreation,
+                    cursor == null ? null : RsqlCursors.decode(cursor), 500);
+            for (Item item : page.getContent()) {
+                assertTrue("Row " + item.getId() + " returned twice", seen.add(item.getId()));
+            }
+            entityManager.clear();
+            if (page.getContent().size() < 500) {
+                break;
+            }
+            // Through the encoded form, as a client would hand the cursor back
+            cursor = RsqlCursors.encode(page.getCursor(page.getContent().size() - 1).orElseThrow());
+        }
+
+        assertEquals(ROWS / 100, seen.size());
+    }
+
+    @Test
+    public void testStreamKeepsAtMostOneBatchManaged() {
+        ItemRepository repository = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration()));
+        SessionStatistics statistics = entityManager.unwrap(Session.class).getStatistics();
+
+        entityManager.getTransaction().begin();
+        long streamed = 0;
+        int mostManaged = 0;
+        try (Stream<Item> items = repository.streamByRsql("category==books", 500)) {
+            Iterator<Item> iterator = items.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                streamed++;
+                mostManaged = Math.max(mostManaged, statistics.getEntityCount());
+            }
+        }
+
+        assertEquals(ROWS / 3, streamed);
+        assertTrue("Up to " + mostManaged + " entities were managed at once", mostManaged <= 500);
+        assertEquals(0, statistics.getEntityCount());
+    }
+
+    @Test
+    public void testParameterizedQueriesMatchInlineQueries() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParameterizedQueries(true);
+        ItemRepository inline = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration()));
+        ItemRepository parameterized = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, configuration));
+        Pageable pageable = Pageable.from(0, 50, BY_ID);
+
+        for (String rsql : List.of(
+                "category==books;score=ge=990",
+                "score=in=(1,2,3);category!=music",
+                "name==*9999",
+                "createdAt=gt=2024-01-01T00:00:00.199990;score=lt=500")) {
+            Page<Item> expected = inline.findByRsql(rsql, pageable);
+            Page<Item> actual = parameterized.findByRsql(rsql, pageable);
+
+            assertFalse(rsql, actual.getContent().isEmpty());
+            assertEquals(rsql, ids(expected), ids(actual));
+            assertEquals(rsql, expected.getTotalSize(), actual.getTotalSize());
+            entityManager.clear();
+        }
+    }
+
+    @Test
+    public void testArrayInListsMatchPlainInLists() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParameterizedQueries(true);
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.ARRAY);
+        ItemRepository plain = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration()));
+        ItemRepository array = new ItemRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, configuration));
+        Pageable pageable = Pageable.from(0, 50, BY_ID);
+
+        for (String rsql : List.of(
+                "score=in=(1,2,3);category==books",
+                "category=in=(music,games);score=lt=5",
+                "score=out=(0,1,2,3);score=lt=6")) {
+            Page<Item> expected = plain.findByRsql(rsql, pageable);
+            Page<Item> actual = array.findByRsql(rsql, pageable);
+
+            assertFalse(rsql, actual.getContent().isEmpty());
+            assertEquals(rsql, ids(expected), ids(actual));
+            assertEquals(rsql, expected.getTotalSize(), actual.getTotalSize());
+            entityManager.clear();
+        }
+    }
+
+    private static long countAll(EntityManager em) {
+        return em.createQuery("select count(i) from Item i", Long.class).getSingleResult();
+    }
+
+    private static List<Long> ids(Page<Item> page) {
+        return page.getContent().stream().map(Item::getId).toList();
+    }
+
+    /**
+     * Inserts the items with a single set-based statement. Scores repeat every thousand rows
+     * and creation times advance by a microsecond per row.
+     */
+    private static void seed(int rows) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery(
+                    "INSERT INTO Item (id, name, category, score, createdAt) "
+                            + "SELECT X, 'item ' || X,"
+                            + " CASE MOD(X, 3) WHEN 0 THEN 'books' WHEN 1 THEN 'music' ELSE 'games' END,"
+                            + " MOD(X, 1000),"
+                            + " DATEADD(MICROSECOND, X, TIMESTAMP '2024-01-01 00:00:00')"
+                            + " FROM SYSTEM_RANGE(1, ?1)")
+                    .setParameter(1, rows)
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+}
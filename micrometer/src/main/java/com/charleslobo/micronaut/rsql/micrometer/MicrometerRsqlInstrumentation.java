@@ -0,0 +1,155 @@
+package com.charleslobo.micronaut.rsql.micrometer;
+
+import com.charleslobo.micronaut.rsql.RsqlCache;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports RSQL stages and caches to a Micrometer registry:
+ * <ul>
+ *   <li>{@code rsql.stage}, a timer per stage, entity, fingerprint and outcome
+ *       ({@code success} or {@code error}),</li>
+ *   <li>{@code rsql.stage.errors}, a counter per stage, entity and exception class,</li>
+ *   <li>{@code rsql.cache.gets} (tagged {@code result=hit|miss}), {@code rsql.cache.evictions},
+ *       {@code rsql.cache.size} and {@code rsql.cache.hit.ratio} per builder cache.</li>
+ * </ul>
+ * Fingerprints keep values out of the tags, but an API that accepts arbitrary filters can
+ * still produce many shapes; past {@code maxFingerprints} distinct ones, further shapes are
+ * tagged {@code other}. Timers are looked up in a local map rather than built on every stop.
+ *
+ * <p>Register it as the builder's {@link RsqlInstrumentation} from an application factory:
+ * <pre>{@code
+ * @Factory
+ * class RsqlMetricsFactory {
+ *     @Singleton
+ *     @Requires(beans = MeterRegistry.class)
+ *     RsqlInstrumentation rsqlMetrics(MeterRegistry registry) {
+ *         return new MicrometerRsqlInstrumentation(registry);
+ *     }
+ * }
+ * }</pre>
+ */
+public class MicrometerRsqlInstrumentation implements RsqlInstrumentation {
+
+	static final String OTHER = "other";
+
+	private final MeterRegistry registry;
+	private final Clock clock;
+	private final int maxFingerprints;
+	private final Set<String> fingerprints = ConcurrentHashMap.newKeySet();
+	private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates instrumentation that tags at most 1000 distinct fingerprints.
+	 */
+	public MicrometerRsqlInstrumentation(MeterRegistry registry) {
+		this(registry, 1000);
+	}
+
+	/**
+	 * Creates instrumentation that tags at most {@code maxFingerprints} distinct fingerprints;
+	 * with zero, every fingerprint is tagged {@code other}.
+	 */
+	public MicrometerRsqlInstrumentation(MeterRegistry registry, int maxFingerprints) {
+		this.registry = registry;
+		this.clock = registry.config().clock();
+		this.maxFingerprints = maxFingerprints;
+	}
+
+	@Override
+	public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+		long start = clock.monotonicTime();
+		return (finalFingerprint, error) -> {
+			String entity = entityClass == null ? "none" : entityClass.getSimpleName();
+			String shape = tag(finalFingerprint != null ? finalFingerprint : fingerprint);
+			TimerKey key = new TimerKey(stage, entity, shape, error == null);
+			timers.computeIfAbsent(key, this::timer)
+					.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+			if (error != null) {
+				Counter.builder("rsql.stage.errors")
+						.description("RSQL stages that failed")
+						.tag("stage", key.stage())
+						.tag("entity", entity)
+						.tag("exception", error.getClass().getSimpleName())
+						.register(registry)
+						.increment();
+			}
+		};
+	}
+
+	@Override
+	public void registerCache(String name, RsqlCache<?, ?> cache) {
+		FunctionCounter.builder("rsql.cache.gets", cache, RsqlCache::getHitCount)
+				.description("RSQL cache lookups")
+				.tag("cache", name)
+				.tag("result", "hit")
+				.register(registry);
+		FunctionCounter.builder("rsql.cache.gets", cache, RsqlCache::getMissCount)
+				.description("RSQL cache lookups")
+				.tag("cache", name)
+				.tag("result", "miss")
+				.register(registry);
+		FunctionCounter.builder("rsql.cache.evictions", cache, RsqlCache::getEvictionCount)
+				.description("RSQL cache evictions")
+				.tag("cache", name)
+				.register(registry);
+		Gauge.builder("rsql.cache.size", cache, RsqlCache::size)
+				.description("RSQL cache entries")
+				.tag("cache", name)
+				.register(registry);
+		Gauge.builder("rsql.cache.hit.ratio", cache, RsqlCache::getHitRate)
+				.description("Fraction of RSQL cache lookups that hit")
+				.tag("cache", name)
+				.register(registry);
+	}
+
+	/**
+	 * Returns the tag value of a fingerprint, {@code other} once the limit is reached. Known
+	 * fingerprints are read without locking; admitting a new one checks the limit and adds it
+	 * under a lock so concurrent stops cannot overshoot it.
+	 */
+	private String tag(String fingerprint) {
+		if (fingerprint == null) {
+			return "none";
+		}
+		if (fingerprints.contains(fingerprint)) {
+			return fingerprint;
+		}
+		synchronized (fingerprints) {
+			if (fingerprints.contains(fingerprint)) {
+				return fingerprint;
+			}
+			if (fingerprints.size() >= maxFingerprints) {
+				return OTHER;
+			}
+			fingerprints.add(fingerprint);
+			return fingerprint;
+		}
+	}
+
+	private Timer timer(TimerKey key) {
+		return Timer.builder("rsql.stage")
+				.description("Time spent in an RSQL filtering stage")
+				.tag("stage", key.stage())
+				.tag("entity", key.entity())
+				.tag("fingerprint", key.fingerprint())
+				.tag("outcome", key.success() ? "success" : "error")
+				.register(registry);
+	}
+
+	private record TimerKey(String stage, String entity, String fingerprint, boolean success) {
+		TimerKey(Stage stage, String entity, String fingerprint, boolean success) {
+			this(stage.name().toLowerCase(Locale.ROOT), entity, fingerprint, success);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.charleslobo.micronaut.rsql.micrometer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.charleslobo.micronaut.rsql.RsqlCache;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation.Stage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MicrometerRsqlInstrumentationTest {
+
+    private SimpleMeterRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void testStopRecordsTimerAndErrorCounter() {
+        MicrometerRsqlInstrumentation instrumentation = new MicrometerRsqlInstrumentation(registry);
+
+        instrumentation.start(Stage.PARSE, Person.class, "name==?").stop(null, null);
+        instrumentation.start(Stage.COMPILE, Person.class, null)
+                .stop("name==?", new IllegalArgumentException("bad"));
+
+        Timer parse = registry.find("rsql.stage")
+                .tags("stage", "parse", "entity", "Person", "fingerprint", "name==?", "outcome", "success")
+                .timer();
+        Timer compile = registry.find("rsql.stage")
+                .tags("stage", "compile", "fingerprint", "name==?", "outcome", "error")
+                .timer();
+        assertNotNull(parse);
+        assertEquals(1, parse.count());
+        assertNotNull(compile);
+        assertEquals(1, compile.count());
+        assertEquals(1.0, registry.get("rsql.stage.errors")
+                .tags("stage", "compile", "exception", "IllegalArgumentException")
+                .counter().count(), 0.0);
+    }
+
+    @Test
+    public void testFingerprintsPastTheLimitAreTaggedOther() {
+        MicrometerRsqlInstrumentation instrumentation = new MicrometerRsqlInstrumentation(registry, 2);
+
+        for (String fingerprint : new String[] {"a==?", "b==?", "c==?", "a==?", "d==?"}) {
+            instrumentation.start(Stage.QUERY, Person.class, fingerprint).stop(null, null);
+        }
+
+        assertEquals(Set.of("a==?", "b==?", MicrometerRsqlInstrumentation.OTHER), fingerprintTags());
+        assertEquals(2, registry.get("rsql.stage").tag("fingerprint", "a==?").timer().count());
+        assertEquals(2, registry.get("rsql.stage").tag("fingerprint", "other").timer().count());
+    }
+
+    @Test
+    public void testConcurrentStopsDoNotExceedTheLimit() throws Exception {
+        int limit = 10;
+        int threads = 8;
+        MicrometerRsqlInstrumentation instrumentation = new MicrometerRsqlInstrumentation(registry, limit);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) {
+                        instrumentation.start(Stage.QUERY, Person.class, "f" + thread + "_" + i + "==?")
+                                .stop(null, null);
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Set<String> tags = fingerprintTags();
+        assertEquals(limit + 1, tags.size());
+        assertEquals(threads * 200L, registry.find("rsql.stage").timers().stream()
+                .mapToLong(Timer::count)
+                .sum());
+    }
+
+    @Test
+    public void testRegisterCacheReportsCacheMeters() {
+        MicrometerRsqlInstrumentation instrumentation = new MicrometerRsqlInstrumentation(registry);
+        RsqlCache<String, String> cache = new RsqlCache<>(1);
+        instrumentation.registerCache("plans", cache);
+
+        cache.get("a", key -> key);
+        cache.get("a", key -> key);
+        cache.get("b", key -> key);
+
+        assertEquals(1.0, registry.get("rsql.cache.gets").tags("cache", "plans", "result", "hit")
+                .functionCounter().count(), 0.0);
+        assertEquals(2.0, registry.get("rsql.cache.gets").tags("cache", "plans", "result", "miss")
+                .functionCounter().count(), 0.0);
+        assertEquals(1.0, registry.get("rsql.cache.evictions").functionCounter().count(), 0.0);
+        assertEquals(1.0, registry.get("rsql.cache.size").gauge().value(), 0.0);
+    }
+
+    private Set<String> fingerprintTags() {
+        return registry.find("rsql.stage").timers().stream()
+                .map(timer -> timer.getId().getTag("fingerprint"))
+                .collect(Collectors.toSet());
+    }
+
+    static class Person {
+    }
+}
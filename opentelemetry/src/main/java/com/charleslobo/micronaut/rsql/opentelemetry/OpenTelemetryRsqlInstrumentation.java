@@ -0,0 +1,117 @@
+package com.charleslobo.micronaut.rsql.opentelemetry;
+
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Traces RSQL stages with OpenTelemetry: each stage becomes a span named {@code rsql.parse},
+ * {@code rsql.compile}, {@code rsql.predicate}, {@code rsql.query}, {@code rsql.count} or
+ * {@code rsql.generate}, a child of the current span (typically the request's), with attributes
+ * <ul>
+ *   <li>{@code rsql.stage}, {@code rsql.entity} and {@code rsql.fingerprint},</li>
+ *   <li>{@code rsql.nodes}, the size of the parsed filter, on {@code rsql.parse},</li>
+ *   <li>{@code rsql.in.sizes}, the number of values of each {@code =in=} and {@code =out=}, on
+ *       {@code rsql.compile},</li>
+ *   <li>{@code rsql.results}, the rows returned or counted, on {@code rsql.query} and
+ *       {@code rsql.count}.</li>
+ * </ul>
+ * A failed stage records its exception and ends with an error status. The span is current
+ * while the stage runs, so JDBC spans of the query and count nest under it. Counts run alongside
+ * the page query, and matcher generation, carry the submitting thread's context, so their
+ * spans nest under the request too.
+ *
+ * <p>Register it as the builder's {@link RsqlInstrumentation} from an application factory:
+ * <pre>{@code
+ * @Factory
+ * class RsqlTracingFactory {
+ *     @Singleton
+ *     @Requires(beans = OpenTelemetry.class)
+ *     RsqlInstrumentation rsqlTracing(OpenTelemetry openTelemetry) {
+ *         return new OpenTelemetryRsqlInstrumentation(openTelemetry);
+ *     }
+ * }
+ * }</pre>
+ */
+public class OpenTelemetryRsqlInstrumentation implements RsqlInstrumentation {
+
+	static final String INSTRUMENTATION_NAME = "micronaut-rsql-predicate";
+
+	static final AttributeKey<String> STAGE = AttributeKey.stringKey("rsql.stage");
+	static final AttributeKey<String> ENTITY = AttributeKey.stringKey("rsql.entity");
+	static final AttributeKey<String> FINGERPRINT = AttributeKey.stringKey("rsql.fingerprint");
+	static final AttributeKey<Long> NODES = AttributeKey.longKey("rsql.nodes");
+	static final AttributeKey<List<Long>> IN_SIZES = AttributeKey.longArrayKey("rsql.in.sizes");
+	static final AttributeKey<Long> RESULTS = AttributeKey.longKey("rsql.results");
+
+	private final Tracer tracer;
+
+	/**
+	 * Creates instrumentation that traces with the {@code micronaut-rsql-predicate} tracer.
+	 */
+	public OpenTelemetryRsqlInstrumentation(OpenTelemetry openTelemetry) {
+		this(openTelemetry.getTracer(INSTRUMENTATION_NAME));
+	}
+
+	public OpenTelemetryRsqlInstrumentation(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	public Runnable wrap(Runnable task) {
+		return Context.current().wrap(task);
+	}
+
+	@Override
+	public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+		String name = stage.name().toLowerCase(Locale.ROOT);
+		Span span =
+				tracer.spanBuilder("rsql." + name)
+						.setSpanKind(SpanKind.INTERNAL)
+						.setAttribute(STAGE, name)
+						.setAttribute(ENTITY, entityClass == null ? "none" : entityClass.getName())
+						.startSpan();
+		if (fingerprint != null) {
+			span.setAttribute(FINGERPRINT, fingerprint);
+		}
+		Scope scope = span.makeCurrent();
+		return new Observation() {
+			@Override
+			public void annotate(Attribute attribute, long... values) {
+				switch (attribute) {
+					case NODES -> span.setAttribute(NODES, values[0]);
+					case RESULTS -> span.setAttribute(RESULTS, values[0]);
+					case IN_SIZES -> {
+						List<Long> sizes = new ArrayList<>(values.length);
+						for (long value : values) {
+							sizes.add(value);
+						}
+						span.setAttribute(IN_SIZES, sizes);
+					}
+				}
+			}
+
+			@Override
+			public void stop(String finalFingerprint, Throwable error) {
+				scope.close();
+				if (fingerprint == null && finalFingerprint != null) {
+					span.setAttribute(FINGERPRINT, finalFingerprint);
+				}
+				if (error != null) {
+					span.recordException(error);
+					span.setStatus(StatusCode.ERROR, String.valueOf(error.getMessage()));
+				}
+				span.end();
+			}
+		};
+	}
+}
@@ -0,0 +1,150 @@
+package com.charleslobo.micronaut.rsql.opentelemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import com.charleslobo.micronaut.rsql.RsqlConfiguration;
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import jakarta.persistence.EntityManager;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OpenTelemetryRsqlInstrumentationTest {
+
+    private InMemorySpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    private Tracer tracer;
+    private OpenTelemetryRsqlInstrumentation instrumentation;
+    private RsqlCriteriaBuilder builder;
+
+    @Before
+    public void setUp() {
+        exporter = InMemorySpanExporter.create();
+        tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        tracer = tracerProvider.get("test");
+        instrumentation = new OpenTelemetryRsqlInstrumentation(tracer);
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class), new RsqlConfiguration(), instrumentation);
+    }
+
+    @After
+    public void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    public void testCompileEmitsParseAndCompileSpans() {
+        builder.compile("name=in=(a,b,c);age>3,name=out=(x,y)", Person.class);
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        SpanData parse = spans.get(0);
+        SpanData compile = spans.get(1);
+        String fingerprint = "(name=in=(?);age=gt=?),name=out=(?)";
+
+        assertEquals("rsql.parse", parse.getName());
+        assertEquals(Person.class.getName(), parse.getAttributes().get(OpenTelemetryRsqlInstrumentation.ENTITY));
+        assertEquals(fingerprint, parse.getAttributes().get(OpenTelemetryRsqlInstrumentation.FINGERPRINT));
+        assertEquals(Long.valueOf(5), parse.getAttributes().get(OpenTelemetryRsqlInstrumentation.NODES));
+
+        assertEquals("rsql.compile", compile.getName());
+        assertEquals("compile", compile.getAttributes().get(OpenTelemetryRsqlInstrumentation.STAGE));
+        assertEquals(fingerprint, compile.getAttributes().get(OpenTelemetryRsqlInstrumentation.FINGERPRINT));
+        assertEquals(List.of(3L, 2L), compile.getAttributes().get(OpenTelemetryRsqlInstrumentation.IN_SIZES));
+    }
+
+    @Test
+    public void testStageSpansNestUnderCurrentSpan() {
+        Span request = tracer.spanBuilder("GET /people").startSpan();
+        try (Scope ignored = request.makeCurrent()) {
+            RsqlInstrumentation.Observation query =
+                    instrumentation.start(RsqlInstrumentation.Stage.QUERY, Person.class, "age=gt=?");
+            tracer.spanBuilder("SELECT person").startSpan().end();
+            query.annotate(RsqlInstrumentation.Attribute.RESULTS, 7);
+            query.stop(null, null);
+        }
+        request.end();
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        SpanData jdbc = spans.get(0);
+        SpanData query = spans.get(1);
+        assertEquals("rsql.query", query.getName());
+        assertEquals(request.getSpanContext().getSpanId(), query.getParentSpanId());
+        assertEquals(query.getSpanId(), jdbc.getParentSpanId());
+        assertEquals(Long.valueOf(7), query.getAttributes().get(OpenTelemetryRsqlInstrumentation.RESULTS));
+        assertEquals(StatusCode.UNSET, query.getStatus().getStatusCode());
+        assertFalse(Span.current().getSpanContext().isValid());
+    }
+
+    @Test
+    public void testWrappedTaskSpansNestUnderSubmittingSpan() throws InterruptedException {
+        Span request = tracer.spanBuilder("GET /people").startSpan();
+        Runnable count;
+        try (Scope ignored = request.makeCurrent()) {
+            count = instrumentation.wrap(() -> instrumentation
+                    .start(RsqlInstrumentation.Stage.COUNT, Person.class, "age=gt=?")
+                    .stop(null, null));
+        }
+        Thread thread = new Thread(count);
+        thread.start();
+        thread.join();
+        request.end();
+
+        SpanData countSpan = exporter.getFinishedSpanItems().get(0);
+        assertEquals("rsql.count", countSpan.getName());
+        assertEquals(request.getSpanContext().getSpanId(), countSpan.getParentSpanId());
+    }
+
+    @Test
+    public void testFailedStageRecordsException() {
+        assertThrows(RuntimeException.class, () -> builder.compile("name=in=", Person.class));
+
+        SpanData parse = exporter.getFinishedSpanItems().get(0);
+        assertEquals("rsql.parse", parse.getName());
+        assertEquals(StatusCode.ERROR, parse.getStatus().getStatusCode());
+        assertEquals("exception", parse.getEvents().get(0).getName());
+    }
+
+    @Test
+    public void testCompositeInstrumentationReportsToEach() {
+        InMemorySpanExporter other = InMemorySpanExporter.create();
+        try (SdkTracerProvider otherProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(other))
+                .build()) {
+            RsqlInstrumentation both = RsqlInstrumentation.of(List.of(
+                    instrumentation, new OpenTelemetryRsqlInstrumentation(otherProvider.get("other"))));
+            new RsqlCriteriaBuilder(mock(EntityManager.class), new RsqlConfiguration(), both)
+                    .compile("age==1", Person.class);
+
+            assertEquals(2, exporter.getFinishedSpanItems().size());
+            assertEquals(2, other.getFinishedSpanItems().size());
+        }
+    }
+
+    public static class Person {
+        private String name;
+        private int age;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A size-bounded concurrent cache with approximate LRU eviction.
+ * Reads are lock-free; eviction uses the CLOCK (second chance) algorithm and is performed
+ * by a single thread at a time once the cache grows past its maximum size. The clock is a ring
+ * of keys in insertion order whose hand, its head, keeps its position between sweeps, so every
+ * entry is considered in turn rather than those first in the hash table over and over.
+ * A maximum size of zero disables caching and every lookup calls the loader.
+ */
+public final class RsqlCache<K, V> {
+
+	private final int maximumSize;
+	private final ConcurrentHashMap<K, Entry<V>> entries;
+	private final ConcurrentLinkedQueue<K> clock = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public RsqlCache(int maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 1024));
+	}
+
+	/**
+	 * Returns the cached value for the key, computing and caching it with the loader on a miss.
+	 * Exceptions thrown by the loader propagate and nothing is cached.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		if (maximumSize == 0) {
+			misses.increment();
+			return loader.apply(key);
+		}
+		Entry<V> entry = entries.get(key);
+		if (entry != null) {
+			hits.increment();
+			if (!entry.referenced) {
+				entry.referenced = true;
+			}
+			return entry.value;
+		}
+		misses.increment();
+		V value = loader.apply(key);
+		if (entries.putIfAbsent(key, new Entry<>(value)) == null) {
+			clock.offer(key);
+		}
+		if (entries.size() > maximumSize) {
+			evict(key);
+		}
+		return value;
+	}
+
+	/**
+	 * Advances the clock hand, giving recently used entries a second chance at the back of the
+	 * ring, until the cache is back under its maximum size. The entry that triggered the
+	 * eviction is never chosen. Only one thread evicts at a time; others simply carry on.
+	 */
+	private void evict(K inserted) {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			// Two turns of the clock clear every reference bit, so this always terminates
+			int budget = 2 * entries.size() + 1;
+			while (budget-- > 0 && entries.size() > maximumSize) {
+				K key = clock.poll();
+				if (key == null) {
+					break;
+				}
+				Entry<V> entry = entries.get(key);
+				if (entry == null) {
+					// Removed by clear()
+					continue;
+				}
+				if (entry.referenced || key.equals(inserted)) {
+					entry.referenced = false;
+					clock.offer(key);
+				} else if (entries.remove(key, entry)) {
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+		clock.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups, or zero if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0.0 : (double) hitCount / total;
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		volatile boolean referenced;
+
+		Entry(V value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Tells {@link RsqlCriteriaBuilder} how the case-insensitive operators ({@code =icase=},
+ * {@code =ilike=}, {@code =inotlike=}) should compare this field, so the predicate matches an
+ * existing index instead of wrapping the column in {@code lower(...)}.
+ * <pre>
+ * // citext column or case-insensitive collation: compare the column itself
+ * &#64;RsqlCaseInsensitive(normalization = Normalization.NONE)
+ * private String email;
+ *
+ * // index on upper(name)
+ * &#64;RsqlCaseInsensitive(normalization = Normalization.UPPER)
+ * private String name;
+ *
+ * // lower-cased shadow column maintained by the application or the database
+ * &#64;RsqlCaseInsensitive(normalization = Normalization.NONE, attribute = "codeLower")
+ * private String code;
+ * </pre>
+ * Only {@code lower} and {@code upper} can be applied to the column: they are the case functions
+ * JPA Criteria renders portably, while other indexed expressions (e.g.
+ * {@code unaccent(lower(name))}) are provider specific. Index such an expression as a generated
+ * or shadow column and name it in {@link #attribute()} instead. The setting is per field rather
+ * than per entity, as normalization is a property of each column and its index.
+ * <p>
+ * Arguments are case-normalized in Java with {@link java.util.Locale#ROOT}, whatever the JVM's
+ * default locale. The database applies its own rules in {@code lower(...)} and
+ * {@code upper(...)}; they agree on ASCII but may differ on some other characters (e.g.
+ * {@code ß} upper-cases to {@code SS} in Java), so indexes on such data are best matched with
+ * {@link Normalization#LOWER} or a shadow column normalized by the application.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface RsqlCaseInsensitive {
+
+	/**
+	 * The function applied to the column, matching the indexed expression.
+	 */
+	Normalization normalization() default Normalization.LOWER;
+
+	/**
+	 * The attribute to compare instead of this one, e.g. a case-normalized shadow column.
+	 * Empty to compare this attribute.
+	 */
+	String attribute() default "";
+
+	enum Normalization {
+		/**
+		 * {@code lower(column)} against the lower-cased argument.
+		 */
+		LOWER,
+		/**
+		 * {@code upper(column)} against the upper-cased argument.
+		 */
+		UPPER,
+		/**
+		 * The column itself against the lower-cased argument, for citext columns,
+		 * case-insensitive collations and lower-cased shadow columns.
+		 */
+		NONE
+	}
+}
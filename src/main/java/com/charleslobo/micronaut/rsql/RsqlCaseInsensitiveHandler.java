@@ -0,0 +1,103 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlCaseInsensitive.Normalization;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import java.util.Locale;
+
+/**
+ * A case-insensitive comparison on a field annotated with {@link RsqlCaseInsensitive}, compared
+ * through the configured normalization and attribute instead of {@code lower(column)}.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class RsqlCaseInsensitiveHandler implements RsqlOperatorHandler {
+
+	private final Operation operation;
+	private final Normalization normalization;
+	private final String attribute;
+
+	private RsqlCaseInsensitiveHandler(Operation operation, RsqlCaseInsensitive caseInsensitive) {
+		this.operation = operation;
+		this.normalization = caseInsensitive.normalization();
+		this.attribute = caseInsensitive.attribute();
+	}
+
+	/**
+	 * Rewrites a prepared lower-case comparison (LOWER_EQUAL, LOWER_LIKE or LOWER_NOT_LIKE) for
+	 * the field's annotation, or returns it unchanged if the field has none.
+	 */
+	static Prepared apply(Prepared prepared, RsqlField field) {
+		RsqlCaseInsensitive caseInsensitive = field.getCaseInsensitive();
+		if (caseInsensitive == null) {
+			return prepared;
+		}
+		String value = (String) prepared.arguments()[0];
+		if (caseInsensitive.normalization() == Normalization.UPPER) {
+			value = value.toUpperCase(Locale.ROOT);
+		}
+		return new Prepared(
+				new RsqlCaseInsensitiveHandler((Operation) prepared.handler(), caseInsensitive), value);
+	}
+
+	@Override
+	public Predicate toPredicate(CriteriaBuilder cb, Path<?> path, Object[] arguments) {
+		Path target = attribute.isEmpty() ? path : path.getParentPath().get(attribute);
+		Expression<String> column =
+				switch (normalization) {
+					case LOWER -> cb.lower(target);
+					case UPPER -> cb.upper(target);
+					case NONE -> target;
+				};
+		Object value = arguments[0];
+		switch (operation) {
+			case LOWER_EQUAL:
+				return value instanceof Expression e ? cb.equal(column, e) : cb.equal(column, value);
+			case LOWER_LIKE:
+				return value instanceof Expression e ? cb.like(column, e) : cb.like(column, (String) value);
+			default:
+				return value instanceof Expression e
+						? cb.notLike(column, e)
+						: cb.notLike(column, (String) value);
+		}
+	}
+
+	/**
+	 * Tests the value of this attribute, normalized like the column; a shadow attribute is
+	 * assumed to hold the same normalized value.
+	 */
+	@Override
+	public java.util.function.Predicate<Object> toMatcher(Object[] arguments) {
+		if (normalization != Normalization.UPPER) {
+			// The lower-case operations lower-case the value themselves
+			return operation.toMatcher(arguments);
+		}
+		java.util.function.Predicate<Object> test =
+				switch (operation) {
+					case LOWER_EQUAL -> Operation.EQUAL.toMatcher(arguments);
+					case LOWER_LIKE -> Operation.LIKE.toMatcher(arguments);
+					default -> Operation.NOT_LIKE.toMatcher(arguments);
+				};
+		return value -> test.test(value == null ? null : value.toString().toUpperCase(Locale.ROOT));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof RsqlCaseInsensitiveHandler other
+				&& operation == other.operation
+				&& normalization == other.normalization
+				&& attribute.equals(other.attribute);
+	}
+
+	@Override
+	public int hashCode() {
+		return (operation.hashCode() * 31 + normalization.hashCode()) * 31 + attribute.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return operation + " " + normalization + (attribute.isEmpty() ? "" : " on " + attribute);
+	}
+}
@@ -0,0 +1,107 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Filters in-heap collections with RSQL, through the in-memory predicates of compiled plans
+ * ({@link RsqlQueryPlan#asPredicate}). Collections of at least
+ * {@code rsql.parallel-filter-threshold} elements are filtered with a parallel stream on the
+ * fork/join pool, smaller ones with a plain loop, as splitting them costs more than it saves.
+ * Declare it next to the builder (see {@link RsqlCriteriaBuilder}) if the application injects it.
+ */
+public class RsqlCollections {
+
+	private final RsqlCriteriaBuilder builder;
+	private final int parallelThreshold;
+	private final ForkJoinPool pool;
+
+	public RsqlCollections(RsqlCriteriaBuilder builder) {
+		this(
+				builder,
+				builder.getConfiguration().getParallelFilterThreshold(),
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an instance that filters collections of at least {@code parallelThreshold}
+	 * elements (never, if not positive) in parallel on the given pool.
+	 */
+	public RsqlCollections(RsqlCriteriaBuilder builder, int parallelThreshold, ForkJoinPool pool) {
+		this.builder = builder;
+		this.parallelThreshold = parallelThreshold;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the elements matching the RSQL filter, in encounter order.
+	 */
+	public <T> List<T> filter(Collection<T> items, String rsql, Class<T> entityClass) {
+		return filter(items, builder.compile(rsql, entityClass), true);
+	}
+
+	/**
+	 * Returns the elements matching the RSQL filter. Unless {@code preserveOrder} is set, a
+	 * parallel filter may return them in any order, which spares it from keeping the encounter
+	 * order of sources that have one.
+	 */
+	public <T> List<T> filter(
+			Collection<T> items, String rsql, Class<T> entityClass, boolean preserveOrder) {
+		return filter(items, builder.compile(rsql, entityClass), preserveOrder);
+	}
+
+	/**
+	 * Returns the elements matching a compiled plan.
+	 */
+	public <T> List<T> filter(Collection<T> items, RsqlQueryPlan<T> plan, boolean preserveOrder) {
+		if (!plan.hasFilter()) {
+			return new ArrayList<>(items);
+		}
+		if (plan.isUnsatisfiable()) {
+			return new ArrayList<>();
+		}
+		// Fetched per call, to pick up a generated matcher once it is ready
+		Predicate<T> predicate = plan.asPredicate();
+		if (parallelThreshold <= 0 || items.size() < parallelThreshold) {
+			List<T> result = new ArrayList<>();
+			for (T item : items) {
+				if (predicate.test(item)) {
+					result.add(item);
+				}
+			}
+			return result;
+		}
+		Stream<T> stream = items.parallelStream();
+		Stream<T> matches = (preserveOrder ? stream : stream.unordered()).filter(predicate);
+		return pool.submit(() -> matches.collect(Collectors.toCollection(ArrayList::new))).join();
+	}
+
+	/**
+	 * Returns the number of elements matching the RSQL filter.
+	 */
+	public <T> long count(Collection<T> items, String rsql, Class<T> entityClass) {
+		RsqlQueryPlan<T> plan = builder.compile(rsql, entityClass);
+		if (!plan.hasFilter()) {
+			return items.size();
+		}
+		if (plan.isUnsatisfiable()) {
+			return 0;
+		}
+		Predicate<T> predicate = plan.asPredicate();
+		if (parallelThreshold <= 0 || items.size() < parallelThreshold) {
+			long count = 0;
+			for (T item : items) {
+				if (predicate.test(item)) {
+					count++;
+				}
+			}
+			return count;
+		}
+		return pool.submit(() -> items.parallelStream().unordered().filter(predicate).count()).join();
+	}
+}
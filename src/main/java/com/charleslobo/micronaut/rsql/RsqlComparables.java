@@ -0,0 +1,69 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.Temporal;
+import java.util.Date;
+
+/**
+ * Brings Java values in line with how the database compares them. Numbers and temporals
+ * compare the same in Java and SQL once normalized; strings and enums do not, as their SQL
+ * order and equality depend on the column's collation and mapping.
+ */
+final class RsqlComparables {
+
+	private RsqlComparables() {}
+
+	/**
+	 * Returns true for the numeric and temporal types, whose normalized values order and
+	 * compare equal in Java exactly as in SQL.
+	 */
+	static boolean isOrdered(Class<?> type) {
+		if (type.isPrimitive()) {
+			return type != boolean.class && type != char.class && type != void.class;
+		}
+		return (Number.class.isAssignableFrom(type) && Comparable.class.isAssignableFrom(type))
+				|| Date.class.isAssignableFrom(type)
+				|| (Temporal.class.isAssignableFrom(type) && Comparable.class.isAssignableFrom(type));
+	}
+
+	/**
+	 * Returns a value whose {@code equals} and {@code compareTo} agree with SQL: decimals
+	 * without trailing zeros, {@code -0.0} as {@code 0.0}, and points in time, whether a
+	 * {@link Date}, a {@link Timestamp} or a zoned date-time, as {@link Instant}s. Other values
+	 * are returned as they are.
+	 */
+	static Object normalize(Object value) {
+		if (value instanceof BigDecimal decimal) {
+			return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+		}
+		if (value instanceof Double number) {
+			return number == 0.0 ? 0.0 : number;
+		}
+		if (value instanceof Float number) {
+			return number == 0.0f ? 0.0f : number;
+		}
+		if (value instanceof Timestamp timestamp) {
+			return timestamp.toInstant();
+		}
+		if (value instanceof Date date) {
+			// java.sql.Date and Time do not support toInstant
+			return Instant.ofEpochMilli(date.getTime());
+		}
+		if (value instanceof OffsetDateTime dateTime) {
+			return dateTime.toInstant();
+		}
+		if (value instanceof ZonedDateTime dateTime) {
+			return dateTime.toInstant();
+		}
+		if (value instanceof OffsetTime time) {
+			return time.withOffsetSameInstant(ZoneOffset.UTC);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,347 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration for {@link RsqlCriteriaBuilder}. The properties are documented under the
+ * {@code rsql} prefix they bind to once the application declares a subclass annotated with
+ * {@code @ConfigurationProperties("rsql")}, as shown on {@link RsqlCriteriaBuilder}.
+ */
+public class RsqlConfiguration {
+
+	/**
+	 * Maximum number of parsed RSQL strings kept in memory. Zero disables the cache.
+	 */
+	private int parseCacheSize = 0;
+
+	/**
+	 * Maximum number of compiled query plans kept in memory. Zero disables the cache.
+	 */
+	private int planCacheSize = 0;
+
+	/**
+	 * Bind RSQL arguments as query parameters instead of embedding them as literals, so
+	 * queries that differ only in their argument values share one provider query plan.
+	 */
+	private boolean parameterizedQueries = false;
+
+	/**
+	 * Run the count query of paged repository queries on a virtual thread, with its own
+	 * EntityManager and read-only transaction, while the page itself is being fetched. Each
+	 * such count holds a second pooled connection while the page query holds the first, so
+	 * the pool must have {@code concurrent-count-limit} connections to spare beyond the
+	 * requests it serves at once, or requests can starve each other of connections. Calls made
+	 * inside a transaction count sequentially, so the total includes their uncommitted writes.
+	 * Requires resource-local transactions; under JTA leave this disabled.
+	 */
+	private boolean concurrentCount = false;
+
+	/**
+	 * Maximum number of counts a builder runs concurrently with their page queries. Past it,
+	 * counts run after the page query, on its connection.
+	 */
+	private int concurrentCountLimit = 8;
+
+	/**
+	 * Simplify the parsed filter before compiling it: flatten nested junctions, remove duplicate
+	 * terms, merge equality disjunctions into {@code =in=} and tighten range bounds. Filters that
+	 * can never match are detected, and repositories answer them without querying.
+	 */
+	private boolean optimizeFilters = false;
+
+	/**
+	 * Maximum nesting depth of the filter. Zero means unlimited. Parenthesized groups are
+	 * counted on the raw string before parsing, redundant ones included, so deeply nested input
+	 * is rejected before the parser descends into it.
+	 */
+	private int maxDepth = 0;
+
+	/**
+	 * Maximum number of comparisons in a filter. Zero means unlimited.
+	 */
+	private int maxComparisons = 0;
+
+	/**
+	 * Maximum number of arguments of a single comparison, e.g. of {@code =in=}. Zero means
+	 * unlimited.
+	 */
+	private int maxArguments = 0;
+
+	/**
+	 * Maximum number of wildcard (LIKE) comparisons in a filter. Zero means unlimited.
+	 */
+	private int maxWildcards = 0;
+
+	/**
+	 * Maximum cost of a filter, see {@link RsqlQueryPlan#getCost()}. Zero means unlimited.
+	 */
+	private int maxCost = 0;
+
+	/**
+	 * Cost of a comparison by operator symbol (e.g. {@code =ilike=: 8}), replacing the built-in
+	 * weight.
+	 */
+	private Map<String, Integer> operatorCosts = new HashMap<>();
+
+	/**
+	 * Cost added for a LIKE pattern starting with a wildcard, which no index can serve.
+	 */
+	private int leadingWildcardCost = 20;
+
+	/**
+	 * Cost added for a comparison on a field that is not indexed.
+	 */
+	private int unindexedCost = 10;
+
+	/**
+	 * How {@code =in=} and {@code =out=} argument lists are turned into SQL.
+	 */
+	private InListStrategy inListStrategy = InListStrategy.PLAIN;
+
+	/**
+	 * Maximum number of values in one IN list with {@link InListStrategy#CHUNKING}. Not a limit
+	 * on the values of the whole statement.
+	 */
+	private int inListChunkSize = 1000;
+
+	/**
+	 * Compile prefix patterns on string fields ({@code name==abc*}) into the range
+	 * {@code name >= 'abc' and name < 'abd'} instead of a LIKE, so a B-tree index can be used.
+	 * Only equivalent for columns with a binary (code point ordered) collation.
+	 */
+	private boolean prefixRanges = false;
+
+	/**
+	 * Compile the in-memory predicates of plans ({@link RsqlQueryPlan#asPredicate}) into hidden
+	 * classes in the background, falling back to the interpreted predicate until they are ready.
+	 */
+	private boolean generatedMatchers = false;
+
+	/**
+	 * Maximum number of compiled filters whose generated matchers are kept.
+	 */
+	private int generatedMatcherCacheSize = 256;
+
+	/**
+	 * Minimum collection size that {@link RsqlCollections} filters in parallel. Zero or
+	 * negative always filters sequentially.
+	 */
+	private int parallelFilterThreshold = 10_000;
+
+	/**
+	 * The parser used for RSQL strings.
+	 */
+	private ParserType parser = ParserType.RSQL_PARSER;
+
+	public int getParseCacheSize() {
+		return parseCacheSize;
+	}
+
+	public void setParseCacheSize(int parseCacheSize) {
+		this.parseCacheSize = parseCacheSize;
+	}
+
+	public int getPlanCacheSize() {
+		return planCacheSize;
+	}
+
+	public void setPlanCacheSize(int planCacheSize) {
+		this.planCacheSize = planCacheSize;
+	}
+
+	public boolean isParameterizedQueries() {
+		return parameterizedQueries;
+	}
+
+	public void setParameterizedQueries(boolean parameterizedQueries) {
+		this.parameterizedQueries = parameterizedQueries;
+	}
+
+	public boolean isConcurrentCount() {
+		return concurrentCount;
+	}
+
+	public void setConcurrentCount(boolean concurrentCount) {
+		this.concurrentCount = concurrentCount;
+	}
+
+	public int getConcurrentCountLimit() {
+		return concurrentCountLimit;
+	}
+
+	public void setConcurrentCountLimit(int concurrentCountLimit) {
+		this.concurrentCountLimit = concurrentCountLimit;
+	}
+
+	public boolean isOptimizeFilters() {
+		return optimizeFilters;
+	}
+
+	public void setOptimizeFilters(boolean optimizeFilters) {
+		this.optimizeFilters = optimizeFilters;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	public int getMaxComparisons() {
+		return maxComparisons;
+	}
+
+	public void setMaxComparisons(int maxComparisons) {
+		this.maxComparisons = maxComparisons;
+	}
+
+	public int getMaxArguments() {
+		return maxArguments;
+	}
+
+	public void setMaxArguments(int maxArguments) {
+		this.maxArguments = maxArguments;
+	}
+
+	public int getMaxWildcards() {
+		return maxWildcards;
+	}
+
+	public void setMaxWildcards(int maxWildcards) {
+		this.maxWildcards = maxWildcards;
+	}
+
+	public int getMaxCost() {
+		return maxCost;
+	}
+
+	public void setMaxCost(int maxCost) {
+		this.maxCost = maxCost;
+	}
+
+	public Map<String, Integer> getOperatorCosts() {
+		return operatorCosts;
+	}
+
+	public void setOperatorCosts(Map<String, Integer> operatorCosts) {
+		this.operatorCosts = operatorCosts;
+	}
+
+	public int getLeadingWildcardCost() {
+		return leadingWildcardCost;
+	}
+
+	public void setLeadingWildcardCost(int leadingWildcardCost) {
+		this.leadingWildcardCost = leadingWildcardCost;
+	}
+
+	public int getUnindexedCost() {
+		return unindexedCost;
+	}
+
+	public void setUnindexedCost(int unindexedCost) {
+		this.unindexedCost = unindexedCost;
+	}
+
+	public InListStrategy getInListStrategy() {
+		return inListStrategy;
+	}
+
+	public void setInListStrategy(InListStrategy inListStrategy) {
+		this.inListStrategy = inListStrategy;
+	}
+
+	public int getInListChunkSize() {
+		return inListChunkSize;
+	}
+
+	public void setInListChunkSize(int inListChunkSize) {
+		this.inListChunkSize = inListChunkSize;
+	}
+
+	public boolean isPrefixRanges() {
+		return prefixRanges;
+	}
+
+	public void setPrefixRanges(boolean prefixRanges) {
+		this.prefixRanges = prefixRanges;
+	}
+
+	public boolean isGeneratedMatchers() {
+		return generatedMatchers;
+	}
+
+	public void setGeneratedMatchers(boolean generatedMatchers) {
+		this.generatedMatchers = generatedMatchers;
+	}
+
+	public int getGeneratedMatcherCacheSize() {
+		return generatedMatcherCacheSize;
+	}
+
+	public void setGeneratedMatcherCacheSize(int generatedMatcherCacheSize) {
+		this.generatedMatcherCacheSize = generatedMatcherCacheSize;
+	}
+
+	public int getParallelFilterThreshold() {
+		return parallelFilterThreshold;
+	}
+
+	public void setParallelFilterThreshold(int parallelFilterThreshold) {
+		this.parallelFilterThreshold = parallelFilterThreshold;
+	}
+
+	public ParserType getParser() {
+		return parser;
+	}
+
+	public void setParser(ParserType parser) {
+		this.parser = parser;
+	}
+
+	public enum InListStrategy {
+		/**
+		 * One IN list with every value.
+		 */
+		PLAIN,
+		/**
+		 * Pad the list to the next power of two by repeating its last value, so parameterized
+		 * queries only produce one statement per power of two instead of one per list length.
+		 */
+		PADDING,
+		/**
+		 * Split lists longer than {@code rsql.in-list-chunk-size} into OR'ed IN lists (AND'ed
+		 * NOT IN lists for {@code =out=}), staying below per-list limits such as Oracle's 1000,
+		 * and pad the last one as {@link #PADDING} does. This bounds only the length of each
+		 * IN list: every value is still bound in the one statement, so it does not help with
+		 * limits on the parameters of a statement, such as SQL Server's 2100 or PostgreSQL's
+		 * 65535. Use {@link #ARRAY} for those, or cap lists with {@code rsql.max-arguments}.
+		 */
+		CHUNKING,
+		/**
+		 * Bind the values as one array and test them with {@code array_contains}, so the
+		 * statement has a single parameter whatever the list length. Requires a provider and
+		 * dialect with array support, such as Hibernate 6.4+ on PostgreSQL or H2, and
+		 * {@code rsql.parameterized-queries}, as an array cannot be rendered as a literal.
+		 * Predicates built without parameters list the values in a plain IN instead.
+		 */
+		ARRAY
+	}
+
+	public enum ParserType {
+		/**
+		 * The JavaCC-generated parser from rsql-parser. It recurses once per nested group, so
+		 * unless {@code rsql.max-depth} is set, groups nesting deeper than 500 are rejected before
+		 * parsing.
+		 */
+		RSQL_PARSER,
+		/**
+		 * The built-in {@link RsqlParser}, which produces the same AST with fewer allocations and
+		 * parses any nesting depth without recursion.
+		 */
+		BUILT_IN
+	}
+}
@@ -1,240 +1,469 @@
 package com.charleslobo.micronaut.rsql;
 
+import com.charleslobo.micronaut.rsql.RsqlConfiguration.InListStrategy;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
 import cz.jirutka.rsql.parser.RSQLParser;
 import cz.jirutka.rsql.parser.ast.*;
-import jakarta.inject.Singleton;
+import io.micronaut.core.annotation.Nullable;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.criteria.*;
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
-import java.time.Instant;
-import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
-@Singleton
+/**
+ * Builds JPA Criteria queries and in-memory predicates from RSQL filters.
+ * <p>
+ * The library is compiled without Micronaut's annotation processor, so it declares no beans and
+ * binds no configuration itself. Applications declare them in a factory, which their own build
+ * processes, binding the {@code rsql.*} properties through a subclass of
+ * {@link RsqlConfiguration}:
+ * <pre>
+ * &#64;ConfigurationProperties("rsql")
+ * public class AppRsqlConfiguration extends RsqlConfiguration {}
+ *
+ * &#64;Factory
+ * public class RsqlFactory {
+ *     &#64;Singleton
+ *     RsqlCriteriaBuilder rsqlCriteriaBuilder(EntityManager entityManager,
+ *             AppRsqlConfiguration configuration, List&lt;RsqlInstrumentation&gt; instrumentations) {
+ *         return new RsqlCriteriaBuilder(entityManager, configuration, instrumentations);
+ *     }
+ * }
+ * </pre>
+ */
 public class RsqlCriteriaBuilder {
 
 	private final EntityManager entityManager;
-	private final RSQLParser rsqlParser;
+	private final RsqlConfiguration configuration;
+	private final Function<String, Node> rsqlParser;
+	private final RsqlCache<String, Node> parseCache;
+	private final RsqlCache<PlanKey, RsqlQueryPlan<?>> planCache;
+	private final boolean parameterizedQueries;
+	private final Map<ComparisonOperator, RsqlOperatorHandler> operatorHandlers;
+	private final RsqlOptimizer optimizer;
+	private final RsqlQueryLimits limits;
+	private final InListStrategy inListStrategy;
+	private final int inListChunkSize;
+	private final boolean prefixRanges;
+	private final RsqlMatcherCompiler matcherCompiler;
+	private final RsqlInstrumentation instrumentation;
+	private final Semaphore countPermits;
 
 	public RsqlCriteriaBuilder(EntityManager entityManager) {
+		this(entityManager, new RsqlConfiguration());
+	}
+
+	public RsqlCriteriaBuilder(EntityManager entityManager, RsqlConfiguration configuration) {
+		this(entityManager, configuration, Map.of());
+	}
+
+	/**
+	 * Creates a builder reporting to every instrumentation bean, e.g. both Micrometer metrics
+	 * and OpenTelemetry spans, or to none.
+	 */
+	public RsqlCriteriaBuilder(
+			EntityManager entityManager,
+			RsqlConfiguration configuration,
+			List<RsqlInstrumentation> instrumentations) {
+		this(entityManager, configuration, Map.of(), RsqlInstrumentation.of(instrumentations));
+	}
+
+	/**
+	 * Creates a builder reporting to the given instrumentation, or to none.
+	 */
+	public RsqlCriteriaBuilder(
+			EntityManager entityManager,
+			RsqlConfiguration configuration,
+			@Nullable RsqlInstrumentation instrumentation) {
+		this(entityManager, configuration, Map.of(), instrumentation);
+	}
+
+	/**
+	 * Creates a builder that also recognizes the given custom operators. A custom operator with
+	 * the same symbols as a built-in one replaces it.
+	 */
+	public RsqlCriteriaBuilder(
+			EntityManager entityManager,
+			RsqlConfiguration configuration,
+			Map<ComparisonOperator, RsqlOperatorHandler> customOperators) {
+		this(entityManager, configuration, customOperators, RsqlInstrumentation.NOOP);
+	}
+
+	/**
+	 * Creates a builder with custom operators, reporting to the given instrumentation.
+	 */
+	public RsqlCriteriaBuilder(
+			EntityManager entityManager,
+			RsqlConfiguration configuration,
+			Map<ComparisonOperator, RsqlOperatorHandler> customOperators,
+			@Nullable RsqlInstrumentation instrumentation) {
 		this.entityManager = entityManager;
-		// Create custom operators
-		Set<ComparisonOperator> operators = new HashSet<>(RSQLOperators.defaultOperators());
+		this.configuration = configuration;
+		this.instrumentation = instrumentation == null ? RsqlInstrumentation.NOOP : instrumentation;
+		// Operators are dispatched by identity, so the parser must be given these exact instances
+		Map<ComparisonOperator, RsqlOperatorHandler> handlers = new IdentityHashMap<>();
+		handlers.put(RSQLOperators.EQUAL, Operation.EQUAL);
+		handlers.put(RSQLOperators.NOT_EQUAL, Operation.NOT_EQUAL);
+		handlers.put(RSQLOperators.GREATER_THAN, Operation.GREATER_THAN);
+		handlers.put(RSQLOperators.GREATER_THAN_OR_EQUAL, Operation.GREATER_THAN_OR_EQUAL);
+		handlers.put(RSQLOperators.LESS_THAN, Operation.LESS_THAN);
+		handlers.put(RSQLOperators.LESS_THAN_OR_EQUAL, Operation.LESS_THAN_OR_EQUAL);
+		handlers.put(RSQLOperators.IN, Operation.IN);
+		handlers.put(RSQLOperators.NOT_IN, Operation.NOT_IN);
 		// Null check operators
-		operators.add(new ComparisonOperator("=isnull=", true));
-		operators.add(new ComparisonOperator("=null=", true));
-		operators.add(new ComparisonOperator("=na=", true));
-		operators.add(new ComparisonOperator("=nn=", true));
-		operators.add(new ComparisonOperator("=notnull=", true));
-		operators.add(new ComparisonOperator("=isnotnull=", true));
+		handlers.put(new ComparisonOperator("=isnull=", true), Operation.IS_NULL);
+		handlers.put(new ComparisonOperator("=null=", true), Operation.IS_NULL);
+		handlers.put(new ComparisonOperator("=na=", true), Operation.IS_NULL);
+		handlers.put(new ComparisonOperator("=nn=", true), Operation.IS_NOT_NULL);
+		handlers.put(new ComparisonOperator("=notnull=", true), Operation.IS_NOT_NULL);
+		handlers.put(new ComparisonOperator("=isnotnull=", true), Operation.IS_NOT_NULL);
 		// Between operators
-		operators.add(new ComparisonOperator("=bt=", true));
-		operators.add(new ComparisonOperator("=nb=", true));
-		// Case-insensitive string operators
-		operators.add(new ComparisonOperator("=ilike=", true));
-		operators.add(new ComparisonOperator("=icase=", true));
-		operators.add(new ComparisonOperator("=notlike=", true));
-		operators.add(new ComparisonOperator("=inotlike=", true));
+		handlers.put(new ComparisonOperator("=bt=", true), Operation.BETWEEN);
+		handlers.put(new ComparisonOperator("=nb=", true), Operation.NOT_BETWEEN);
+		// String operators
+		handlers.put(new ComparisonOperator("=like=", true), Operation.LIKE);
+		handlers.put(new ComparisonOperator("=ilike=", true), Operation.LOWER_LIKE);
+		handlers.put(new ComparisonOperator("=icase=", true), Operation.LOWER_EQUAL);
+		handlers.put(new ComparisonOperator("=notlike=", true), Operation.NOT_LIKE);
+		handlers.put(new ComparisonOperator("=inotlike=", true), Operation.LOWER_NOT_LIKE);
+		for (Map.Entry<ComparisonOperator, RsqlOperatorHandler> custom : customOperators.entrySet()) {
+			handlers.keySet().removeIf(custom.getKey()::equals);
+			handlers.put(custom.getKey(), custom.getValue());
+		}
+		this.operatorHandlers = handlers;
+		this.optimizer = configuration.isOptimizeFilters() ? new RsqlOptimizer(handlers) : null;
+		this.limits = new RsqlQueryLimits(configuration, handlers);
+		this.inListStrategy = configuration.getInListStrategy();
+		this.inListChunkSize = configuration.getInListChunkSize();
+		this.prefixRanges = configuration.isPrefixRanges();
+		this.matcherCompiler =
+				configuration.isGeneratedMatchers()
+						? new RsqlMatcherCompiler(
+								configuration.getGeneratedMatcherCacheSize(),
+								ForkJoinPool.commonPool(),
+								this.instrumentation)
+						: null;
+		this.countPermits = new Semaphore(Math.max(0, configuration.getConcurrentCountLimit()));
+		if (inListChunkSize <= 0) {
+			throw new IllegalArgumentException("In-list chunk size must be positive: " + inListChunkSize);
+		}
+		if (inListStrategy == InListStrategy.ARRAY && !configuration.isParameterizedQueries()) {
+			// The array cannot be rendered as a literal, only bound as a parameter
+			throw new IllegalArgumentException(
+					"In-list strategy ARRAY requires rsql.parameterized-queries to be enabled");
+		}
+		Set<ComparisonOperator> operators = new HashSet<>(handlers.keySet());
+
+		Function<String, Node> parser =
+				configuration.getParser() == RsqlConfiguration.ParserType.BUILT_IN
+						? new RsqlParser(operators)::parse
+						: new RSQLParser(operators)::parse;
+		this.rsqlParser =
+				rsql -> {
+					limits.checkNesting(rsql);
+					return parser.apply(rsql);
+				};
+		this.parseCache = new RsqlCache<>(configuration.getParseCacheSize());
+		this.planCache = new RsqlCache<>(configuration.getPlanCacheSize());
+		this.parameterizedQueries = configuration.isParameterizedQueries();
+		this.instrumentation.registerCache("parse", parseCache);
+		this.instrumentation.registerCache("plan", planCache);
+	}
 
-		this.rsqlParser = new RSQLParser(operators);
+	public RsqlConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Returns the permits bounding the counts that repositories built on this builder run
+	 * concurrently with their page queries, {@code rsql.concurrent-count-limit} of them.
+	 */
+	public Semaphore getCountPermits() {
+		return countPermits;
+	}
+
+	/**
+	 * Returns the instrumentation this builder reports to, {@link RsqlInstrumentation#NOOP}
+	 * if none.
+	 */
+	public RsqlInstrumentation getInstrumentation() {
+		return instrumentation;
 	}
 
 	/**
 	 * Parses an RSQL string into an AST Node using the configured parser with custom operators.
 	 * This should be used instead of creating new RSQLParser() instances to ensure custom operators are recognized.
+	 * Nodes are immutable, so when {@code rsql.parse-cache-size} is set, repeated strings are served from the cache.
 	 */
 	public Node parse(String rsql) {
-		return rsqlParser.parse(rsql);
+		if (rsql == null) {
+			// Before the cache, which cannot hold a null key
+			throw new IllegalArgumentException("query must not be null");
+		}
+		return parseCache.get(rsql, rsqlParser);
+	}
+
+	/**
+	 * Returns the parse cache, for inspecting hit and miss counts.
+	 */
+	public RsqlCache<String, Node> getParseCache() {
+		return parseCache;
+	}
+
+	/**
+	 * Parses the RSQL string and resolves it against the entity class into a reusable plan.
+	 * When {@code rsql.plan-cache-size} is set, plans are cached per entity class and RSQL string.
+	 * A blank or null string yields a plan without a filter. A filter exceeding the configured
+	 * complexity limits is rejected with an {@link RsqlLimitExceededException}.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> RsqlQueryPlan<T> compile(String rsql, Class<T> entityClass) {
+		return (RsqlQueryPlan<T>)
+				planCache.get(new PlanKey(entityClass, rsql), key -> createPlan(rsql, entityClass));
+	}
+
+	/**
+	 * Returns the plan cache, for inspecting hit and miss counts.
+	 */
+	public RsqlCache<PlanKey, RsqlQueryPlan<?>> getPlanCache() {
+		return planCache;
+	}
+
+	private <T> RsqlQueryPlan<T> createPlan(String rsql, Class<T> entityClass) {
+		if (rsql == null || rsql.isBlank()) {
+			return new RsqlQueryPlan<>(rsql, entityClass, null, null, 0);
+		}
+		RsqlInstrumentation.Observation parsing =
+				instrumentation.start(RsqlInstrumentation.Stage.PARSE, entityClass, null);
+		Node rootNode;
+		try {
+			rootNode = parse(rsql);
+		} catch (RuntimeException | Error e) {
+			parsing.stop(null, e);
+			throw e;
+		}
+		boolean instrumented = instrumentation != RsqlInstrumentation.NOOP;
+		String fingerprint = instrumented ? RsqlFingerprints.of(rootNode) : null;
+		if (instrumented) {
+			parsing.annotate(
+					RsqlInstrumentation.Attribute.NODES, RsqlFingerprints.nodeCount(rootNode));
+		}
+		parsing.stop(fingerprint, null);
+
+		RsqlInstrumentation.Observation compiling =
+				instrumentation.start(RsqlInstrumentation.Stage.COMPILE, entityClass, fingerprint);
+		RsqlQueryPlan<T> plan;
+		try {
+			int cost = limits.check(rootNode, entityClass);
+			Node compiledNode =
+					optimizer == null ? rootNode : optimizer.optimize(rootNode, entityClass);
+			plan =
+					compiledNode.equals(RsqlOptimizer.ALWAYS)
+							? new RsqlQueryPlan<>(rsql, entityClass, rootNode, null, cost)
+							: new RsqlQueryPlan<>(
+									rsql,
+									entityClass,
+									rootNode,
+									compileNode(compiledNode, entityClass),
+									cost,
+									matcherCompiler);
+		} catch (RuntimeException | Error e) {
+			compiling.stop(fingerprint, e);
+			throw e;
+		}
+		long[] inListSizes = instrumented ? RsqlFingerprints.inListSizes(rootNode) : null;
+		if (inListSizes != null && inListSizes.length > 0) {
+			compiling.annotate(RsqlInstrumentation.Attribute.IN_SIZES, inListSizes);
+		}
+		compiling.stop(fingerprint, null);
+		return plan;
+	}
+
+	/**
+	 * Returns an equivalent, simplified AST for the entity class, as compiled when
+	 * {@code rsql.optimize-filters} is enabled. A filter that matches everything becomes an
+	 * empty AndNode and one that matches nothing an empty OrNode.
+	 */
+	public Node optimize(Node node, Class<?> entityClass) {
+		return (optimizer == null ? new RsqlOptimizer(operatorHandlers) : optimizer)
+				.optimize(node, entityClass);
 	}
 
 	/**
 	 * Converts an RSQL string into a CriteriaQuery for the given entity class.
 	 */
 	public <T> CriteriaQuery<T> fromRsql(String rsql, Class<T> entityClass) {
-		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-		CriteriaQuery<T> query = cb.createQuery(entityClass);
-		Root<T> root = query.from(entityClass);
-		query.select(root);
-
-		if (rsql != null && !rsql.isBlank()) {
-			Node rootNode = rsqlParser.parse(rsql);
-			Predicate predicate = buildPredicate(rootNode, root, cb, entityClass);
-			query.where(predicate);
+		return fromRsql(compile(rsql, entityClass));
+	}
+
+	/**
+	 * Converts a compiled plan into a CriteriaQuery for its entity class, with arguments
+	 * embedded as literals.
+	 */
+	public <T> CriteriaQuery<T> fromRsql(RsqlQueryPlan<T> plan) {
+		return fromRsql(plan, RsqlParameters.INLINE);
+	}
+
+	/**
+	 * Converts a compiled plan into a CriteriaQuery for its entity class, collecting argument
+	 * values in the given parameters. Call {@link RsqlParameters#applyTo} on the TypedQuery
+	 * created from the result.
+	 */
+	public <T> CriteriaQuery<T> fromRsql(RsqlQueryPlan<T> plan, RsqlParameters parameters) {
+		String fingerprint =
+				instrumentation == RsqlInstrumentation.NOOP ? null : plan.getFingerprint();
+		RsqlInstrumentation.Observation building =
+				instrumentation.start(
+						RsqlInstrumentation.Stage.PREDICATE, plan.getEntityClass(), fingerprint);
+		try {
+			CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+			CriteriaQuery<T> query = cb.createQuery(plan.getEntityClass());
+			Root<T> root = query.from(plan.getEntityClass());
+			query.select(root);
+
+			if (plan.hasFilter()) {
+				query.where(plan.toPredicate(root, cb, parameters));
+			}
+
+			building.stop(fingerprint, null);
+			return query;
+		} catch (RuntimeException | Error e) {
+			building.stop(fingerprint, e);
+			throw e;
 		}
+	}
 
-		return query;
+	/**
+	 * Compiles the RSQL string into an in-memory predicate over instances of the entity class,
+	 * matching the entities the CriteriaQuery would select. See {@link RsqlQueryPlan#asPredicate}.
+	 */
+	public <T> java.util.function.Predicate<T> toPredicate(String rsql, Class<T> entityClass) {
+		return compile(rsql, entityClass).asPredicate();
 	}
 
 	/**
-	 * Recursively builds a Predicate from the RSQL AST.
+	 * Creates the parameters for one query, parameterized if {@code rsql.parameterized-queries}
+	 * is enabled.
+	 */
+	public RsqlParameters createParameters() {
+		return new RsqlParameters(parameterizedQueries);
+	}
+
+	/**
+	 * Builds a Predicate from the RSQL AST.
 	 */
 	public <T> Predicate buildPredicate(
 			Node node, Root<T> root, CriteriaBuilder cb, Class<T> entityClass) {
-		if (node instanceof AndNode) {
-			List<Predicate> children =
-					((AndNode) node)
-							.getChildren().stream()
-									.map(child -> buildPredicate(child, root, cb, entityClass))
-									.collect(Collectors.toList());
-			return cb.and(children.toArray(new Predicate[0]));
-		} else if (node instanceof OrNode) {
-			List<Predicate> children =
-					((OrNode) node)
-							.getChildren().stream()
-									.map(child -> buildPredicate(child, root, cb, entityClass))
-									.collect(Collectors.toList());
-			return cb.or(children.toArray(new Predicate[0]));
-		} else if (node instanceof ComparisonNode) {
-			return comparisonNodeToPredicate((ComparisonNode) node, root, cb, entityClass);
-		} else {
-			throw new IllegalArgumentException("Unsupported RSQL node type: " + node.getClass());
-		}
+		return compileNode(node, entityClass).toPredicate(root, cb, RsqlParameters.INLINE);
 	}
 
 	/**
-	 * Converts a single ComparisonNode to a Predicate.
+	 * Builds a Predicate from a compiled plan, or returns {@code null} if the plan has no filter.
 	 */
-	private <T> Predicate comparisonNodeToPredicate(
-			ComparisonNode comparison, Root<T> root, CriteriaBuilder cb, Class<T> entityClass) {
-		String fieldName = comparison.getSelector();
-		String operator = comparison.getOperator().getSymbol();
+	public <T> Predicate buildPredicate(RsqlQueryPlan<T> plan, Root<T> root, CriteriaBuilder cb) {
+		return plan.toPredicate(root, cb);
+	}
 
-		// Handle null check operators that don't need value conversion
-		if (operator.equals("=isnull=") || operator.equals("=null=") || operator.equals("=na=")) {
-			return cb.isNull(root.get(fieldName));
-		}
-		if (operator.equals("=nn=") || operator.equals("=notnull=") || operator.equals("=isnotnull=")) {
-			return cb.isNotNull(root.get(fieldName));
-		}
+	/**
+	 * Builds a Predicate from a compiled plan, binding argument values through the given parameters.
+	 */
+	public <T> Predicate buildPredicate(
+			RsqlQueryPlan<T> plan, Root<T> root, CriteriaBuilder cb, RsqlParameters parameters) {
+		return plan.toPredicate(root, cb, parameters);
+	}
 
-		// Handle between operators that need two values
-		if (operator.equals("=bt=")) {
-			if (comparison.getArguments().size() < 2) {
-				throw new IllegalArgumentException("Between operator requires two arguments");
+	/**
+	 * Compiles the RSQL AST in a post-order walk with an explicit chain of frames instead of
+	 * recursion, so arbitrarily deep filters cannot overflow the thread stack.
+	 */
+	private RsqlQueryPlan.Step compileNode(Node root, Class<?> entityClass) {
+		CompileFrame frame = null;
+		Node node = root;
+		while (true) {
+			if (node instanceof LogicalNode logical && !logical.getChildren().isEmpty()) {
+				frame = new CompileFrame(logical, frame);
+				node = frame.children.get(0);
+				continue;
 			}
-			Class<?> fieldType = getFieldType(entityClass, fieldName);
-			Comparable lowerBound = (Comparable) convertValue(comparison.getArguments().get(0), fieldType);
-			Comparable upperBound = (Comparable) convertValue(comparison.getArguments().get(1), fieldType);
-			return cb.between(root.get(fieldName), lowerBound, upperBound);
-		}
-		if (operator.equals("=nb=")) {
-			if (comparison.getArguments().size() < 2) {
-				throw new IllegalArgumentException("Not between operator requires two arguments");
+			RsqlQueryPlan.Step step;
+			if (node instanceof LogicalNode) {
+				// The empty junctions produced by the optimizer
+				step = new RsqlQueryPlan.Junction(node instanceof AndNode, new RsqlQueryPlan.Step[0]);
+			} else if (node instanceof ComparisonNode) {
+				step = compileComparison((ComparisonNode) node, entityClass);
+			} else {
+				throw new IllegalArgumentException("Unsupported RSQL node type: " + node.getClass());
 			}
-			Class<?> fieldType = getFieldType(entityClass, fieldName);
-			Comparable lowerBound = (Comparable) convertValue(comparison.getArguments().get(0), fieldType);
-			Comparable upperBound = (Comparable) convertValue(comparison.getArguments().get(1), fieldType);
-			return cb.not(cb.between(root.get(fieldName), lowerBound, upperBound));
-		}
-
-		Object value =
-				convertValue(comparison.getArguments().get(0), getFieldType(entityClass, fieldName));
-
-		switch (operator) {
-			case "==":
-			case "=eq=":
-				// Check if the value contains wildcard patterns and convert to LIKE
-				String stringValue = value.toString();
-				if (stringValue.contains("*")) {
-					// Convert wildcard pattern to SQL LIKE pattern
-					String likePattern = stringValue.replace("*", "%");
-					return cb.like(root.get(fieldName), likePattern);
-				} else {
-					return cb.equal(root.get(fieldName), value);
+			// Hand the step to its parent, completing every junction whose last child this was
+			while (true) {
+				if (frame == null) {
+					return step;
 				}
-			case "!=":
-			case "=ne=":
-				// Check if the value contains wildcard patterns and convert to NOT LIKE
-				String stringValueNe = value.toString();
-				if (stringValueNe.contains("*")) {
-					// Convert wildcard pattern to SQL NOT LIKE pattern
-					String likePattern = stringValueNe.replace("*", "%");
-					return cb.not(cb.like(root.get(fieldName), likePattern));
-				} else {
-					return cb.notEqual(root.get(fieldName), value);
+				frame.steps[frame.next++] = step;
+				if (frame.next < frame.steps.length) {
+					node = frame.children.get(frame.next);
+					break;
 				}
-			case ">":
-			case "=gt=":
-				return cb.greaterThan(root.get(fieldName), (Comparable) value);
-			case "<":
-			case "=lt=":
-				return cb.lessThan(root.get(fieldName), (Comparable) value);
-			case ">=":
-			case "=ge=":
-				return cb.greaterThanOrEqualTo(root.get(fieldName), (Comparable) value);
-			case "<=":
-			case "=le=":
-				return cb.lessThanOrEqualTo(root.get(fieldName), (Comparable) value);
-            case "=in=":
-                List<Object> values = comparison.getArguments().stream()
-                    .map(arg -> convertValue(arg, getFieldType(entityClass, fieldName)))
-                    .collect(Collectors.toList());
-                return root.get(fieldName).in(values);
-            case "=out=":
-                List<Object> outValues = comparison.getArguments().stream()
-                    .map(arg -> convertValue(arg, getFieldType(entityClass, fieldName)))
-                    .collect(Collectors.toList());
-                return cb.not(root.get(fieldName).in(outValues));
-			case "=like=":
-				return cb.like(root.get(fieldName), value.toString());
-			case "=ilike=":
-				// Case-insensitive LIKE
-				return cb.like(cb.lower(root.get(fieldName)), value.toString().toLowerCase());
-			case "=icase=":
-				// Case-insensitive equal
-				return cb.equal(cb.lower(root.get(fieldName)), value.toString().toLowerCase());
-			case "=notlike=":
-				// NOT LIKE
-				return cb.notLike(root.get(fieldName), value.toString());
-			case "=inotlike=":
-				// Case-insensitive NOT LIKE
-				return cb.notLike(cb.lower(root.get(fieldName)), value.toString().toLowerCase());
-			default:
-				throw new UnsupportedOperationException(
-						"Operator not supported: " + comparison.getOperator().getSymbol());
+				step = new RsqlQueryPlan.Junction(frame.and, frame.steps);
+				frame = frame.parent;
+			}
 		}
 	}
 
 	/**
-	 * Returns the Java type of a given field in the entity.
+	 * A logical node whose children are being compiled.
 	 */
-	private Class<?> getFieldType(Class<?> entityClass, String fieldName) {
-		Class<?> currentClass = entityClass;
-		while (currentClass != null) {
-			try {
-				Field field = currentClass.getDeclaredField(fieldName);
-				return field.getType();
-			} catch (NoSuchFieldException e) {
-				// Field not found in current class, try parent class
-				currentClass = currentClass.getSuperclass();
-			}
+	private static final class CompileFrame {
+		final List<Node> children;
+		final boolean and;
+		final RsqlQueryPlan.Step[] steps;
+		final CompileFrame parent;
+		int next;
+
+		CompileFrame(LogicalNode node, CompileFrame parent) {
+			this.children = node.getChildren();
+			this.and = node instanceof AndNode;
+			this.steps = new RsqlQueryPlan.Step[children.size()];
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * Compiles a single ComparisonNode with the handler registered for its operator.
+	 */
+	private RsqlQueryPlan.Step compileComparison(ComparisonNode comparison, Class<?> entityClass) {
+		RsqlOperatorHandler handler = operatorHandlers.get(comparison.getOperator());
+		if (handler == null) {
+			throw new UnsupportedOperationException(
+					"Operator not supported: " + comparison.getOperator().getSymbol());
 		}
-		throw new IllegalArgumentException("Unknown field: " + fieldName);
-	}
-
-	/**
-	 * Converts string RSQL argument to the correct Java type.
-	 */
-	private Object convertValue(String value, Class<?> type) {
-		if (type == String.class) return value;
-		else if (type == Long.class || type == long.class) return Long.valueOf(value);
-		else if (type == Integer.class || type == int.class) return Integer.valueOf(value);
-		else if (type == BigDecimal.class) return new BigDecimal(value);
-		else if (type == Boolean.class || type == boolean.class) return Boolean.parseBoolean(value);
-		else if (type == Double.class || type == double.class) return Double.valueOf(value);
-		else if (type == Float.class || type == float.class) return Float.valueOf(value);
-		else if (type == Short.class || type == short.class) return Short.valueOf(value);
-		else if (type == Byte.class || type == byte.class) return Byte.valueOf(value);
-		else if (type == LocalDate.class) return LocalDate.parse(value);
-		else if (type == Instant.class) return Instant.parse(value);
-		else if (type == java.util.Date.class) return new java.util.Date(Long.parseLong(value));
-		else if (type == java.sql.Date.class) return new java.sql.Date(Long.parseLong(value));
-		else if (type == java.sql.Timestamp.class) return new java.sql.Timestamp(Long.parseLong(value));
-		else if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, value);
-		else throw new IllegalArgumentException("Unsupported type: " + type);
+		String fieldName = comparison.getSelector();
+		RsqlField field = RsqlEntityMetadata.of(entityClass).findField(fieldName);
+		RsqlOperatorHandler.Prepared prepared =
+				handler.prepare(fieldName, field, comparison.getArguments());
+		if (inListStrategy != InListStrategy.PLAIN
+				&& (prepared.handler() == Operation.IN || prepared.handler() == Operation.NOT_IN)) {
+			prepared = RsqlInLists.apply(prepared, inListStrategy, inListChunkSize);
+		}
+		if (prefixRanges
+				&& field != null
+				&& field.getType() == String.class
+				&& (prepared.handler() == Operation.WILDCARD_LIKE
+						|| prepared.handler() == Operation.WILDCARD_NOT_LIKE)) {
+			prepared = RsqlPrefixRanges.apply(prepared, comparison.getArguments().get(0));
+		}
+		return new RsqlQueryPlan.Comparison(
+				fieldName, field, prepared.handler(), prepared.arguments());
 	}
+
+	/**
+	 * Cache key for compiled plans.
+	 */
+	public record PlanKey(Class<?> entityClass, String rsql) {}
 }
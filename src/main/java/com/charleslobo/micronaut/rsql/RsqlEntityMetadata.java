@@ -0,0 +1,103 @@
+package com.charleslobo.micronaut.rsql;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Field metadata for an entity class, resolved once per class and shared.
+ * All fields of the class hierarchy are indexed up front (a subclass field hides a
+ * superclass field of the same name), so lookups are plain map reads and unknown
+ * selectors need no reflection either.
+ */
+public final class RsqlEntityMetadata {
+
+	private static final ClassValue<RsqlEntityMetadata> METADATA =
+			new ClassValue<>() {
+				@Override
+				protected RsqlEntityMetadata computeValue(Class<?> type) {
+					return new RsqlEntityMetadata(type);
+				}
+			};
+
+	private final Class<?> entityClass;
+	private final Map<String, RsqlField> fields;
+
+	private RsqlEntityMetadata(Class<?> entityClass) {
+		this.entityClass = entityClass;
+		Set<String> indexedColumns = indexedColumns(entityClass);
+		Map<String, RsqlField> resolved = new HashMap<>();
+		for (Class<?> current = entityClass; current != null; current = current.getSuperclass()) {
+			for (Field field : current.getDeclaredFields()) {
+				resolved.putIfAbsent(
+						field.getName(), new RsqlField(field, isIndexed(field, indexedColumns)));
+			}
+		}
+		this.fields = Map.copyOf(resolved);
+	}
+
+	/**
+	 * Returns the lower-cased leading columns of the indexes declared with {@code @Table}, the
+	 * only ones a filter on a single column can use.
+	 */
+	private static Set<String> indexedColumns(Class<?> entityClass) {
+		Set<String> columns = new HashSet<>();
+		for (Class<?> current = entityClass; current != null; current = current.getSuperclass()) {
+			Table table = current.getAnnotation(Table.class);
+			if (table != null) {
+				for (Index index : table.indexes()) {
+					// "name ASC, created" -> "name"
+					String leading = index.columnList().split(",")[0].trim().split("\\s+")[0];
+					columns.add(leading.toLowerCase(Locale.ROOT));
+				}
+			}
+		}
+		return columns;
+	}
+
+	private static boolean isIndexed(Field field, Set<String> indexedColumns) {
+		if (field.isAnnotationPresent(Id.class) || field.isAnnotationPresent(EmbeddedId.class)) {
+			return true;
+		}
+		Column column = field.getAnnotation(Column.class);
+		if (column != null && column.unique()) {
+			return true;
+		}
+		String name = column != null && !column.name().isEmpty() ? column.name() : field.getName();
+		return indexedColumns.contains(name.toLowerCase(Locale.ROOT));
+	}
+
+	public static RsqlEntityMetadata of(Class<?> entityClass) {
+		return METADATA.get(entityClass);
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * Returns the field for a selector, or {@code null} if the entity has no such field.
+	 */
+	public RsqlField findField(String name) {
+		return fields.get(name);
+	}
+
+	/**
+	 * Returns the field for a selector, failing if the entity has no such field.
+	 */
+	public RsqlField getField(String name) {
+		RsqlField field = fields.get(name);
+		if (field == null) {
+			throw new IllegalArgumentException("Unknown field: " + name);
+		}
+		return field;
+	}
+}
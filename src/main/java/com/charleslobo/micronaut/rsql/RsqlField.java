@@ -0,0 +1,154 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+
+/**
+ * A resolved entity attribute that RSQL selectors can refer to, with its type and argument converter.
+ */
+public final class RsqlField {
+
+	private final String name;
+	private final Field field;
+	private final Function<String, Object> converter;
+	private final boolean indexed;
+	private final RsqlCaseInsensitive caseInsensitive;
+	private volatile Function<Object, Object> accessor;
+
+	RsqlField(Field field, boolean indexed) {
+		this.name = field.getName();
+		this.field = field;
+		this.converter = RsqlValueConverters.forType(field.getType());
+		this.indexed = indexed;
+		this.caseInsensitive = field.getAnnotation(RsqlCaseInsensitive.class);
+	}
+
+	/**
+	 * The attribute name, as passed to {@code Root.get}.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Class<?> getType() {
+		return field.getType();
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * Returns true if the field is an id, a unique column, or the leading column of an index
+	 * declared with {@code @Table(indexes = ...)}.
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Returns how case-insensitive operators compare this field, or {@code null} for the
+	 * default {@code lower(column)}.
+	 */
+	public RsqlCaseInsensitive getCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	/**
+	 * Converts a string RSQL argument to this field's type.
+	 */
+	public Object convert(String value) {
+		return converter.apply(value);
+	}
+
+	/**
+	 * Reads this field from an entity instance.
+	 */
+	public Object read(Object entity) {
+		try {
+			if (!field.canAccess(entity)) {
+				field.setAccessible(true);
+			}
+			return field.get(entity);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot read field: " + name, e);
+		}
+	}
+
+	/**
+	 * Returns a function reading this field from an entity instance, created on first use and
+	 * cached. It calls the field's getter through a LambdaMetafactory-generated class, which
+	 * the JIT inlines like a direct call and which also loads lazy proxies, or reads the field
+	 * through a MethodHandle if there is no getter.
+	 */
+	public Function<Object, Object> accessor() {
+		Function<Object, Object> result = accessor;
+		if (result == null) {
+			result = createAccessor();
+			accessor = result;
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Function<Object, Object> createAccessor() {
+		Class<?> owner = field.getDeclaringClass();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+			Method getter = findGetter(owner);
+			if (getter != null && lookup.hasFullPrivilegeAccess()) {
+				MethodHandle handle = lookup.unreflect(getter);
+				return (Function<Object, Object>)
+						LambdaMetafactory.metafactory(
+										lookup,
+										"apply",
+										MethodType.methodType(Function.class),
+										MethodType.methodType(Object.class, Object.class),
+										handle,
+										MethodType.methodType(getter.getReturnType(), owner).wrap())
+								.getTarget()
+								.invokeExact();
+			}
+			MethodHandle handle =
+					lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+			return entity -> {
+				try {
+					return (Object) handle.invokeExact(entity);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IllegalStateException("Cannot read field: " + name, e);
+				}
+			};
+		} catch (Throwable e) {
+			// e.g. a module that does not open the entity package
+			return this::read;
+		}
+	}
+
+	/**
+	 * Returns the no-argument {@code getX} or {@code isX} method returning the field type, or
+	 * null if the declaring class has none.
+	 */
+	private Method findGetter(Class<?> owner) {
+		String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		for (String prefix : new String[] {"get", "is"}) {
+			try {
+				Method method = owner.getDeclaredMethod(prefix + suffix);
+				if (method.getReturnType() == field.getType()
+						&& !Modifier.isStatic(method.getModifiers())) {
+					return method;
+				}
+			} catch (NoSuchMethodException e) {
+				// Try the next prefix
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,141 @@
+package com.charleslobo.micronaut.rsql;
+
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Normalizes a parsed filter into its shape, with argument values replaced by {@code ?}:
+ * {@code status==ACTIVE;age=gt=30} becomes {@code status==?;age=gt=?}, and argument lists of any
+ * length become {@code (?)}. Filters that differ only in their values share a fingerprint,
+ * which keeps it usable as a metric tag or span attribute. Also measures the size of a filter
+ * for the same purpose.
+ */
+final class RsqlFingerprints {
+
+	/**
+	 * The longest fingerprint returned; longer shapes keep a prefix and end in a digest of the
+	 * whole shape, so distinct long filters still get distinct fingerprints.
+	 */
+	static final int MAX_LENGTH = 200;
+
+	private static final int DIGEST_BYTES = 8;
+	private static final int PREFIX_LENGTH = MAX_LENGTH - 1 - 2 * DIGEST_BYTES;
+
+	private RsqlFingerprints() {}
+
+	/**
+	 * Returns the fingerprint of the AST, walking it with an explicit stack of nodes and
+	 * separators so deep filters cannot overflow the thread stack. Fingerprints longer than
+	 * {@link #MAX_LENGTH} are shortened to a prefix, {@code #} and the hex of the first bytes
+	 * of the SHA-256 of the full shape.
+	 */
+	static String of(Node root) {
+		StringBuilder fingerprint = new StringBuilder();
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Object next = pending.pop();
+			if (next instanceof String text) {
+				fingerprint.append(text);
+			} else if (next instanceof ComparisonNode comparison) {
+				fingerprint
+						.append(comparison.getSelector())
+						.append(comparison.getOperator().getSymbol())
+						.append(comparison.getArguments().size() == 1 ? "?" : "(?)");
+			} else {
+				LogicalNode logical = (LogicalNode) next;
+				List<Node> children = logical.getChildren();
+				boolean nested = logical != root;
+				if (nested) {
+					pending.push(")");
+				}
+				String separator = logical instanceof AndNode ? ";" : ",";
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.push(children.get(i));
+					if (i > 0) {
+						pending.push(separator);
+					}
+				}
+				if (nested) {
+					pending.push("(");
+				}
+			}
+		}
+		return bounded(fingerprint);
+	}
+
+	private static String bounded(CharSequence fingerprint) {
+		String shape = fingerprint.toString();
+		if (shape.length() <= MAX_LENGTH) {
+			return shape;
+		}
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256")
+					.digest(shape.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+		return shape.substring(0, PREFIX_LENGTH) + '#'
+				+ HexFormat.of().formatHex(digest, 0, DIGEST_BYTES);
+	}
+
+	/**
+	 * Returns the number of nodes of the AST, logical and comparison.
+	 */
+	static int nodeCount(Node root) {
+		int count = 0;
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Node next = pending.pop();
+			count++;
+			if (next instanceof LogicalNode logical) {
+				logical.getChildren().forEach(pending::push);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of values of each {@code =in=} and {@code =out=} comparison of the
+	 * AST, in filter order.
+	 */
+	static long[] inListSizes(Node root) {
+		long[] sizes = new long[4];
+		int count = 0;
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Node next = pending.pop();
+			if (next instanceof LogicalNode logical) {
+				List<Node> children = logical.getChildren();
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.push(children.get(i));
+				}
+			} else {
+				ComparisonNode comparison = (ComparisonNode) next;
+				if (comparison.getOperator().equals(RSQLOperators.IN)
+						|| comparison.getOperator().equals(RSQLOperators.NOT_IN)) {
+					if (count == sizes.length) {
+						sizes = Arrays.copyOf(sizes, count * 2);
+					}
+					sizes[count++] = comparison.getArguments().size();
+				}
+			}
+		}
+		return Arrays.copyOf(sizes, count);
+	}
+}
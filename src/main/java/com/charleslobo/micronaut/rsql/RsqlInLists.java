@@ -0,0 +1,185 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlConfiguration.InListStrategy;
+import com.charleslobo.micronaut.rsql.RsqlOperatorHandler.Prepared;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Applies the configured {@link InListStrategy} to compiled {@code =in=} and {@code =out=}
+ * comparisons. The strategy is chosen when the plan is compiled, so building predicates pays
+ * nothing for it.
+ */
+final class RsqlInLists {
+
+	private RsqlInLists() {}
+
+	/**
+	 * Rewrites a prepared IN or NOT IN comparison according to the strategy.
+	 */
+	static Prepared apply(Prepared prepared, InListStrategy strategy, int chunkSize) {
+		boolean negated = prepared.handler() == Operation.NOT_IN;
+		Object[] values = prepared.arguments();
+		switch (strategy) {
+			case PADDING:
+				return new Prepared(prepared.handler(), pad(values));
+			case CHUNKING:
+				Object[] padded = padChunks(values, chunkSize);
+				if (padded.length <= chunkSize) {
+					return new Prepared(prepared.handler(), padded);
+				}
+				return new Prepared(new Chunked(negated, chunkSize), padded);
+			case ARRAY:
+				return new Prepared(new ArrayContains(negated), toArray(values));
+			default:
+				return prepared;
+		}
+	}
+
+	/**
+	 * Pads the values to the next power of two by repeating the last one, which changes neither
+	 * IN nor NOT IN.
+	 */
+	static Object[] pad(Object[] values) {
+		int padded = Integer.highestOneBit(values.length);
+		if (padded == values.length) {
+			return values;
+		}
+		padded <<= 1;
+		Object[] result = Arrays.copyOf(values, padded);
+		Arrays.fill(result, values.length, padded, values[values.length - 1]);
+		return result;
+	}
+
+	/**
+	 * Pads the last, partial chunk of the values like {@link #pad}, though to no more than
+	 * {@code chunkSize} values, so that chunks only come in a few lengths.
+	 */
+	static Object[] padChunks(Object[] values, int chunkSize) {
+		int tail = values.length % chunkSize;
+		int padded = Math.min(Integer.highestOneBit(tail), chunkSize);
+		if (padded == tail) {
+			return values;
+		}
+		padded = Math.min(padded << 1, chunkSize);
+		Object[] result = Arrays.copyOf(values, values.length - tail + padded);
+		Arrays.fill(result, values.length, result.length, values[values.length - 1]);
+		return result;
+	}
+
+	/**
+	 * Copies the values into an array typed by the first one, as the array parameter is bound
+	 * with that type.
+	 */
+	private static Object toArray(Object[] values) {
+		Class<?> type =
+				values[0] instanceof Enum<?> constant ? constant.getDeclaringClass() : values[0].getClass();
+		Object array = Array.newInstance(type, values.length);
+		System.arraycopy(values, 0, array, 0, values.length);
+		return array;
+	}
+
+	/**
+	 * IN lists of at most {@code chunkSize} values, OR'ed (or NOT IN lists, AND'ed).
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final class Chunked implements RsqlOperatorHandler {
+		private final boolean negated;
+		private final int chunkSize;
+
+		Chunked(boolean negated, int chunkSize) {
+			this.negated = negated;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] arguments) {
+			Predicate[] chunks = new Predicate[(arguments.length + chunkSize - 1) / chunkSize];
+			for (int i = 0; i < chunks.length; i++) {
+				int from = i * chunkSize;
+				Object[] chunk =
+						Arrays.copyOfRange(arguments, from, Math.min(from + chunkSize, arguments.length));
+				Predicate in = chunk instanceof Expression[] e ? path.in(e) : path.in(chunk);
+				chunks[i] = negated ? cb.not(in) : in;
+			}
+			return negated ? cb.and(chunks) : cb.or(chunks);
+		}
+
+		@Override
+		public java.util.function.Predicate<Object> toMatcher(Object[] arguments) {
+			return RsqlMatchers.in(arguments, negated);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Chunked other && negated == other.negated && chunkSize == other.chunkSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return negated ? -chunkSize : chunkSize;
+		}
+
+		@Override
+		public String toString() {
+			return (negated ? "NOT_IN" : "IN") + " chunks of " + chunkSize;
+		}
+	}
+
+	/**
+	 * {@code array_contains(values, path)} with the values as one array.
+	 */
+	private static final class ArrayContains implements RsqlOperatorHandler {
+		private final boolean negated;
+
+		ArrayContains(boolean negated) {
+			this.negated = negated;
+		}
+
+		@Override
+		public Predicate toPredicate(CriteriaBuilder cb, Path<?> path, Object[] arguments) {
+			Predicate contains;
+			if (arguments[0] instanceof Expression<?> array) {
+				contains = cb.isTrue(cb.function("array_contains", Boolean.class, array, path));
+			} else {
+				// Predicates built without parameters cannot bind the array, and an array literal
+				// cannot be rendered, so the values are listed
+				contains = path.in(values(arguments));
+			}
+			return negated ? cb.not(contains) : contains;
+		}
+
+		@Override
+		public java.util.function.Predicate<Object> toMatcher(Object[] arguments) {
+			return RsqlMatchers.in(values(arguments), negated);
+		}
+
+		private static Object[] values(Object[] arguments) {
+			Object[] values = new Object[Array.getLength(arguments[0])];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Array.get(arguments[0], i);
+			}
+			return values;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ArrayContains other && negated == other.negated;
+		}
+
+		@Override
+		public int hashCode() {
+			return Boolean.hashCode(negated);
+		}
+
+		@Override
+		public String toString() {
+			return (negated ? "NOT_IN" : "IN") + " array";
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Observes the stages of RSQL filtering, for metrics or tracing. {@link RsqlCriteriaBuilder}
+ * and the repositories built on it start an {@link Observation} around each stage and stop it
+ * when the stage completes or fails. The default, {@link #NOOP}, observes nothing, and
+ * fingerprints are only computed for instrumentation other than it, so uninstrumented
+ * filtering pays for little more than a field read.
+ */
+public interface RsqlInstrumentation {
+
+	RsqlInstrumentation NOOP = new RsqlInstrumentation() {};
+
+	/**
+	 * Returns instrumentation that reports to each of the given ones, e.g. to both record
+	 * metrics and trace; {@link #NOOP} if there are none.
+	 */
+	static RsqlInstrumentation of(List<? extends RsqlInstrumentation> instrumentations) {
+		List<RsqlInstrumentation> active = new ArrayList<>();
+		for (RsqlInstrumentation instrumentation : instrumentations) {
+			if (instrumentation != null && instrumentation != NOOP) {
+				active.add(instrumentation);
+			}
+		}
+		if (active.isEmpty()) {
+			return NOOP;
+		}
+		if (active.size() == 1) {
+			return active.get(0);
+		}
+		return new RsqlInstrumentation() {
+			@Override
+			public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+				Observation[] observations = new Observation[active.size()];
+				for (int i = 0; i < observations.length; i++) {
+					observations[i] = active.get(i).start(stage, entityClass, fingerprint);
+				}
+				return new Observation() {
+					@Override
+					public void annotate(Attribute attribute, long... values) {
+						for (Observation observation : observations) {
+							observation.annotate(attribute, values);
+						}
+					}
+
+					@Override
+					public void stop(String fingerprint, Throwable error) {
+						// In reverse, so scopes opened by later observations close first
+						for (int i = observations.length - 1; i >= 0; i--) {
+							observations[i].stop(fingerprint, error);
+						}
+					}
+				};
+			}
+
+			@Override
+			public Runnable wrap(Runnable task) {
+				for (RsqlInstrumentation instrumentation : active) {
+					task = instrumentation.wrap(task);
+				}
+				return task;
+			}
+
+			@Override
+			public void registerCache(String name, RsqlCache<?, ?> cache) {
+				for (RsqlInstrumentation instrumentation : active) {
+					instrumentation.registerCache(name, cache);
+				}
+			}
+		};
+	}
+
+	/**
+	 * The instrumented stages.
+	 */
+	enum Stage {
+		/**
+		 * Parsing an RSQL string, through the parse cache.
+		 */
+		PARSE,
+		/**
+		 * Checking limits, optimizing and compiling a parsed filter into a plan.
+		 */
+		COMPILE,
+		/**
+		 * Building the CriteriaQuery of a plan.
+		 */
+		PREDICATE,
+		/**
+		 * Running a data query.
+		 */
+		QUERY,
+		/**
+		 * Running a count query.
+		 */
+		COUNT,
+		/**
+		 * Generating the hidden classes of a plan's in-memory predicate, in the background (with
+		 * {@code rsql.generated-matchers}). A failure leaves the plan on its interpreted one.
+		 */
+		GENERATE
+	}
+
+	/**
+	 * Measurements reported on a stage before it stops.
+	 */
+	enum Attribute {
+		/**
+		 * The number of nodes of the parsed filter, logical and comparison (on
+		 * {@link Stage#PARSE}).
+		 */
+		NODES,
+		/**
+		 * The number of values of each {@code =in=} and {@code =out=} comparison, in filter
+		 * order (on {@link Stage#COMPILE}, if the filter has any).
+		 */
+		IN_SIZES,
+		/**
+		 * The number of rows a data query returned, or the number a count query counted (on
+		 * {@link Stage#QUERY} and {@link Stage#COUNT}).
+		 */
+		RESULTS
+	}
+
+	/**
+	 * Starts observing a stage for the entity class.
+	 *
+	 * @param fingerprint the filter with argument values stripped (see
+	 *     {@link RsqlQueryPlan#getFingerprint()}), or {@code null} if it is not known yet, as
+	 *     when parsing
+	 */
+	default Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+		return Observation.NOOP;
+	}
+
+	/**
+	 * Wraps a task that runs stages on another thread, such as a count run alongside the page
+	 * query, so they are observed in the context of the thread that submits it, e.g. under its
+	 * current trace span. Called on the submitting thread; the default returns the task as is.
+	 */
+	default Runnable wrap(Runnable task) {
+		return task;
+	}
+
+	/**
+	 * Registers a cache of the builder, e.g. to report its hit ratio.
+	 *
+	 * @param name {@code parse} or {@code plan}
+	 */
+	default void registerCache(String name, RsqlCache<?, ?> cache) {}
+
+	/**
+	 * A stage in progress.
+	 */
+	interface Observation {
+
+		Observation NOOP = (fingerprint, error) -> {};
+
+		/**
+		 * Reports a measurement of the stage. Called at most once per attribute, before
+		 * {@link #stop}.
+		 */
+		default void annotate(Attribute attribute, long... values) {}
+
+		/**
+		 * Ends the stage. Called once, on the thread that started it.
+		 *
+		 * @param fingerprint the filter fingerprint, if it became known during the stage, or
+		 *     {@code null}
+		 * @param error the exception the stage failed with, or {@code null}
+		 */
+		void stop(String fingerprint, Throwable error);
+	}
+}
@@ -0,0 +1,14 @@
+package com.charleslobo.micronaut.rsql;
+
+/**
+ * Thrown when an RSQL filter exceeds one of the configured complexity limits, before any
+ * query is built.
+ */
+public class RsqlLimitExceededException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RsqlLimitExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,227 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation.Observation;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation.Stage;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Comparison;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Junction;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Step;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the in-memory predicates of plans into hidden classes, one per junction, copied
+ * from {@link RsqlMatcherTemplate} with the junction's accessors and value tests as class data.
+ * Compilation runs on the given executor and its result is cached by entity class and the exact
+ * structure and values of the compiled filter, so equal filters share the generated classes.
+ * Until it completes, or if it fails, plans keep using their interpreted predicate. Each
+ * compilation is observed as {@link Stage#GENERATE}, and failures are also logged.
+ */
+final class RsqlMatcherCompiler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RsqlMatcherCompiler.class);
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final RsqlCache<MatcherKey, CompletableFuture<Predicate<Object>>> cache;
+	private final Executor executor;
+	private final RsqlInstrumentation instrumentation;
+	private volatile byte[] template;
+
+	RsqlMatcherCompiler(int cacheSize, Executor executor, RsqlInstrumentation instrumentation) {
+		this.cache = new RsqlCache<>(cacheSize);
+		this.executor = executor;
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * Starts compiling the step of a plan, or reuses the compilation of an equal one, and
+	 * passes the generated predicate to the callback once it is ready. The callback runs
+	 * immediately if it already is, and never if compilation fails.
+	 */
+	void compile(RsqlQueryPlan<?> plan, Consumer<Predicate<Object>> callback) {
+		cache.get(
+						new MatcherKey(plan.getEntityClass(), plan.getStep()),
+						key -> CompletableFuture.supplyAsync(
+								() -> observeGenerate(plan),
+								task -> executor.execute(instrumentation.wrap(task))))
+				.thenAccept(callback);
+	}
+
+	/**
+	 * Generates the predicate of a plan as an instrumented stage, logging failures, after which
+	 * the plan stays on its interpreted predicate.
+	 */
+	private Predicate<Object> observeGenerate(RsqlQueryPlan<?> plan) {
+		String fingerprint =
+				instrumentation == RsqlInstrumentation.NOOP ? null : plan.getFingerprint();
+		Observation observation =
+				instrumentation.start(Stage.GENERATE, plan.getEntityClass(), fingerprint);
+		try {
+			Predicate<Object> generated = generate(plan.getStep());
+			observation.stop(fingerprint, null);
+			return generated;
+		} catch (RuntimeException | Error e) {
+			observation.stop(fingerprint, e);
+			LOG.warn(
+					"Cannot generate the matcher of {} filter {}, keeping the interpreted one",
+					plan.getEntityClass().getName(),
+					plan.getFingerprint(),
+					e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Generates the predicate of a step: a comparison becomes a single-slot conjunction, and
+	 * each junction a hidden class whose slots read the attribute of a comparison child or
+	 * pass the entity to the generated class of a junction child. Junctions are generated
+	 * bottom-up by {@link Junction#fold}, without recursion.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	Predicate<Object> generate(Step step) {
+		if (!(step instanceof Junction junction)) {
+			Comparison comparison = (Comparison) step;
+			return define(
+					true,
+					new Function[] {comparison.accessor()},
+					new Predicate[] {comparison.valueMatcher()});
+		}
+		return (Predicate<Object>) junction.fold(child -> child, (parent, children) -> {
+			Function<Object, Object>[] accessors = new Function[children.length];
+			Predicate<Object>[] tests = new Predicate[children.length];
+			for (int i = 0; i < children.length; i++) {
+				if (children[i] instanceof Comparison comparison) {
+					accessors[i] = comparison.accessor();
+					tests[i] = comparison.valueMatcher();
+				} else {
+					// The already generated predicate of a junction child
+					accessors[i] = Function.identity();
+					tests[i] = (Predicate<Object>) children[i];
+				}
+			}
+			return define(parent.isAnd(), accessors, tests);
+		});
+	}
+
+	/**
+	 * Defines the hidden class of a junction, splitting one with more children than the
+	 * template has slots into nested junctions of the same kind.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Predicate<Object> define(
+			boolean and, Function<Object, Object>[] accessors, Predicate<Object>[] tests) {
+		while (accessors.length > RsqlMatcherTemplate.SLOTS) {
+			int groups = (accessors.length + RsqlMatcherTemplate.SLOTS - 1) / RsqlMatcherTemplate.SLOTS;
+			Function<Object, Object>[] groupAccessors = new Function[groups];
+			Predicate<Object>[] groupTests = new Predicate[groups];
+			for (int i = 0; i < groups; i++) {
+				int from = i * RsqlMatcherTemplate.SLOTS;
+				int to = Math.min(from + RsqlMatcherTemplate.SLOTS, accessors.length);
+				groupAccessors[i] = Function.identity();
+				groupTests[i] =
+						define(
+								and,
+								Arrays.copyOfRange(accessors, from, to),
+								Arrays.copyOfRange(tests, from, to));
+			}
+			accessors = groupAccessors;
+			tests = groupTests;
+		}
+		try {
+			MethodHandles.Lookup hidden =
+					LOOKUP.defineHiddenClassWithClassData(
+							template(), new Object[] {and, accessors, tests}, true);
+			return (Predicate<Object>)
+					hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+							.invoke();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot define matcher class", e);
+		}
+	}
+
+	/**
+	 * The cache key of a step: its entity class and the step flattened in pre-order into the
+	 * kind and size of each junction and the attribute, handler and values of each comparison.
+	 * Values are compared with {@code equals}, so unlike the step's string form the key tells
+	 * apart a quoted {@code 'x, y'} from {@code (x,y)} and dates differing in milliseconds.
+	 */
+	static final class MatcherKey {
+		private final Class<?> entityClass;
+		private final Object[] tokens;
+		private final int hash;
+
+		MatcherKey(Class<?> entityClass, Step step) {
+			List<Object> flattened = new ArrayList<>();
+			Deque<Step> pending = new ArrayDeque<>();
+			pending.push(step);
+			while (!pending.isEmpty()) {
+				Step next = pending.pop();
+				if (next instanceof Junction junction) {
+					Step[] children = junction.children();
+					flattened.add(junction.isAnd());
+					flattened.add(children.length);
+					for (int i = children.length - 1; i >= 0; i--) {
+						pending.push(children[i]);
+					}
+				} else {
+					Comparison comparison = (Comparison) next;
+					flattened.add(comparison.attribute());
+					flattened.add(comparison.handler());
+					flattened.add(comparison.values());
+				}
+			}
+			this.entityClass = entityClass;
+			this.tokens = flattened.toArray();
+			this.hash = 31 * entityClass.hashCode() + Arrays.deepHashCode(tokens);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof MatcherKey other
+					&& hash == other.hash
+					&& entityClass == other.entityClass
+					&& Arrays.deepEquals(tokens, other.tokens);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Returns the class file of the template, read once from the class path.
+	 */
+	private byte[] template() {
+		byte[] bytes = template;
+		if (bytes == null) {
+			try (InputStream in =
+					RsqlMatcherCompiler.class.getResourceAsStream("RsqlMatcherTemplate.class")) {
+				if (in == null) {
+					throw new IllegalStateException("RsqlMatcherTemplate.class not found");
+				}
+				bytes = in.readAllBytes();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			template = bytes;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,78 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The class {@link RsqlMatcherCompiler} copies into a hidden class for each junction it
+ * compiles. The copy's class data holds the kind of junction and up to {@link #SLOTS} pairs of
+ * attribute accessor and value test, which the static initializer stores in static final
+ * fields. The JIT treats those as constants: unused slots fold away, and every call in
+ * {@link #test} has a single receiver that can be inlined, instead of the megamorphic call
+ * sites a shared lambda tree has. Never loaded as an ordinary class.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class RsqlMatcherTemplate implements Predicate<Object> {
+
+	static final int SLOTS = 8;
+
+	private static final boolean AND;
+	private static final int COUNT;
+	private static final Function<Object, Object> A0, A1, A2, A3, A4, A5, A6, A7;
+	private static final Predicate<Object> T0, T1, T2, T3, T4, T5, T6, T7;
+
+	static {
+		Object[] data;
+		try {
+			data = MethodHandles.classData(
+					MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, Object[].class);
+		} catch (IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+		Function<Object, Object>[] accessors =
+				data == null ? new Function[0] : (Function<Object, Object>[]) data[1];
+		Predicate<Object>[] tests = data == null ? new Predicate[0] : (Predicate<Object>[]) data[2];
+		AND = data == null || (Boolean) data[0];
+		COUNT = accessors.length;
+		A0 = accessors.length > 0 ? accessors[0] : null;
+		A1 = accessors.length > 1 ? accessors[1] : null;
+		A2 = accessors.length > 2 ? accessors[2] : null;
+		A3 = accessors.length > 3 ? accessors[3] : null;
+		A4 = accessors.length > 4 ? accessors[4] : null;
+		A5 = accessors.length > 5 ? accessors[5] : null;
+		A6 = accessors.length > 6 ? accessors[6] : null;
+		A7 = accessors.length > 7 ? accessors[7] : null;
+		T0 = tests.length > 0 ? tests[0] : null;
+		T1 = tests.length > 1 ? tests[1] : null;
+		T2 = tests.length > 2 ? tests[2] : null;
+		T3 = tests.length > 3 ? tests[3] : null;
+		T4 = tests.length > 4 ? tests[4] : null;
+		T5 = tests.length > 5 ? tests[5] : null;
+		T6 = tests.length > 6 ? tests[6] : null;
+		T7 = tests.length > 7 ? tests[7] : null;
+	}
+
+	@Override
+	public boolean test(Object entity) {
+		if (AND) {
+			return (COUNT < 1 || T0.test(A0.apply(entity)))
+					&& (COUNT < 2 || T1.test(A1.apply(entity)))
+					&& (COUNT < 3 || T2.test(A2.apply(entity)))
+					&& (COUNT < 4 || T3.test(A3.apply(entity)))
+					&& (COUNT < 5 || T4.test(A4.apply(entity)))
+					&& (COUNT < 6 || T5.test(A5.apply(entity)))
+					&& (COUNT < 7 || T6.test(A6.apply(entity)))
+					&& (COUNT < 8 || T7.test(A7.apply(entity)));
+		}
+		return (COUNT > 0 && T0.test(A0.apply(entity)))
+				|| (COUNT > 1 && T1.test(A1.apply(entity)))
+				|| (COUNT > 2 && T2.test(A2.apply(entity)))
+				|| (COUNT > 3 && T3.test(A3.apply(entity)))
+				|| (COUNT > 4 && T4.test(A4.apply(entity)))
+				|| (COUNT > 5 && T5.test(A5.apply(entity)))
+				|| (COUNT > 6 && T6.test(A6.apply(entity)))
+				|| (COUNT > 7 && T7.test(A7.apply(entity)));
+	}
+}
@@ -0,0 +1,221 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory tests of attribute values for the built-in operations, with the semantics of the
+ * SQL their predicates compile to: a comparison against a {@code null} value is never true,
+ * except for IS NULL. Numbers and points in time are compared once normalized by
+ * {@link RsqlComparables}, so scale and {@code Date} subclasses do not matter. LIKE patterns are
+ * matched case-sensitively, as under a binary collation.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class RsqlMatchers {
+
+	private RsqlMatchers() {}
+
+	/**
+	 * Returns the test of an attribute value for the operation and its prepared values.
+	 */
+	static Predicate<Object> of(Operation operation, Object[] values) {
+		switch (operation) {
+			case IS_NULL:
+				return value -> value == null;
+			case IS_NOT_NULL:
+				return value -> value != null;
+			case EQUAL:
+				return equal(values[0], false);
+			case NOT_EQUAL:
+				return equal(values[0], true);
+			case GREATER_THAN: {
+				Object bound = RsqlComparables.normalize(values[0]);
+				return value -> value != null && compare(value, bound) > 0;
+			}
+			case GREATER_THAN_OR_EQUAL: {
+				Object bound = RsqlComparables.normalize(values[0]);
+				return value -> value != null && compare(value, bound) >= 0;
+			}
+			case LESS_THAN: {
+				Object bound = RsqlComparables.normalize(values[0]);
+				return value -> value != null && compare(value, bound) < 0;
+			}
+			case LESS_THAN_OR_EQUAL: {
+				Object bound = RsqlComparables.normalize(values[0]);
+				return value -> value != null && compare(value, bound) <= 0;
+			}
+			case BETWEEN:
+			case NOT_BETWEEN: {
+				boolean negated = operation == Operation.NOT_BETWEEN;
+				Object lower = RsqlComparables.normalize(values[0]);
+				Object upper = RsqlComparables.normalize(values[1]);
+				return value -> value != null
+						&& (compare(value, lower) >= 0 && compare(value, upper) <= 0) != negated;
+			}
+			case RANGE:
+			case NOT_RANGE: {
+				boolean negated = operation == Operation.NOT_RANGE;
+				Object lower = RsqlComparables.normalize(values[0]);
+				Object upper = RsqlComparables.normalize(values[1]);
+				return value -> value != null
+						&& (compare(value, lower) >= 0 && compare(value, upper) < 0) != negated;
+			}
+			case IN:
+				return in(values, false);
+			case NOT_IN:
+				return in(values, true);
+			case LIKE:
+				return like(values[0].toString(), (char) 0, false, false);
+			case NOT_LIKE:
+				return like(values[0].toString(), (char) 0, false, true);
+			case LOWER_EQUAL: {
+				Object expected = values[0];
+				return value -> value != null && value.toString().toLowerCase(Locale.ROOT).equals(expected);
+			}
+			case LOWER_LIKE:
+				return like(values[0].toString(), (char) 0, true, false);
+			case LOWER_NOT_LIKE:
+				return like(values[0].toString(), (char) 0, true, true);
+			case WILDCARD_LIKE:
+				return like(values[0].toString(), Operation.ESCAPE, false, false);
+			case WILDCARD_NOT_LIKE:
+				return like(values[0].toString(), Operation.ESCAPE, false, true);
+			default:
+				throw new UnsupportedOperationException(
+						"Operation not supported in memory: " + operation);
+		}
+	}
+
+	/**
+	 * Returns the test of equality to the value, or of inequality if negated, as the database
+	 * compares them: decimals regardless of scale, and a {@link java.sql.Timestamp} equal to the
+	 * {@link java.util.Date} of the same instant. Other comparable values of the same class are
+	 * compared with {@code compareTo}.
+	 */
+	static Predicate<Object> equal(Object expected, boolean negated) {
+		Object normalized = RsqlComparables.normalize(expected);
+		return value -> {
+			if (value == null) {
+				return false;
+			}
+			Object actual = RsqlComparables.normalize(value);
+			boolean equal =
+					actual instanceof Comparable comparable && actual.getClass() == normalized.getClass()
+							? comparable.compareTo(normalized) == 0
+							: actual.equals(normalized);
+			return equal != negated;
+		};
+	}
+
+	/**
+	 * Returns the test of membership in the values, or of non-membership if negated. Values are
+	 * normalized as for {@link #equal}, so a hash set finds them.
+	 */
+	static Predicate<Object> in(Object[] values, boolean negated) {
+		if (values.length == 1) {
+			return equal(values[0], negated);
+		}
+		Set<Object> set = new HashSet<>(values.length * 2);
+		for (Object value : values) {
+			set.add(RsqlComparables.normalize(value));
+		}
+		return value -> value != null && set.contains(RsqlComparables.normalize(value)) != negated;
+	}
+
+	/**
+	 * Compares the value with a normalized bound.
+	 */
+	private static int compare(Object value, Object bound) {
+		return ((Comparable) RsqlComparables.normalize(value)).compareTo(bound);
+	}
+
+	/**
+	 * Returns the test of a LIKE pattern against the string form of the value, lower-cased
+	 * first if {@code lowerCase} is set.
+	 */
+	static Predicate<Object> like(String pattern, char escape, boolean lowerCase, boolean negated) {
+		Predicate<String> matcher = compileLike(pattern, escape);
+		return value -> {
+			if (value == null) {
+				return false;
+			}
+			String string = value.toString();
+			return matcher.test(lowerCase ? string.toLowerCase(Locale.ROOT) : string) != negated;
+		};
+	}
+
+	/**
+	 * Compiles a LIKE pattern, where {@code %} matches any sequence and {@code _} any single
+	 * character, and the escape character (zero for none) makes the next character literal.
+	 * Exact, prefix, suffix and infix patterns are matched with plain string methods; anything
+	 * else with a regular expression.
+	 */
+	static Predicate<String> compileLike(String pattern, char escape) {
+		// Literal runs, with null standing for % (consecutive ones merged) and "" for _
+		List<String> tokens = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		boolean single = false;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (escape != 0 && c == escape && i + 1 < pattern.length()) {
+				literal.append(pattern.charAt(++i));
+			} else if (c == '%' || c == '_') {
+				if (!literal.isEmpty()) {
+					tokens.add(literal.toString());
+					literal.setLength(0);
+				}
+				if (c == '_') {
+					single = true;
+					tokens.add("");
+				} else if (tokens.isEmpty() || tokens.get(tokens.size() - 1) != null) {
+					tokens.add(null);
+				}
+			} else {
+				literal.append(c);
+			}
+		}
+		if (!literal.isEmpty() || tokens.isEmpty()) {
+			tokens.add(literal.toString());
+		}
+		if (!single) {
+			switch (tokens.size()) {
+				case 1: {
+					String text = tokens.get(0);
+					return text == null ? string -> true : text::equals;
+				}
+				case 2: {
+					String text = tokens.get(0) == null ? tokens.get(1) : tokens.get(0);
+					return tokens.get(0) == null
+							? string -> string.endsWith(text)
+							: string -> string.startsWith(text);
+				}
+				case 3:
+					if (tokens.get(0) == null) {
+						String text = tokens.get(1);
+						return string -> string.contains(text);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		StringBuilder regex = new StringBuilder(pattern.length() + 8);
+		for (String token : tokens) {
+			if (token == null) {
+				regex.append(".*");
+			} else if (token.isEmpty()) {
+				regex.append('.');
+			} else {
+				regex.append(Pattern.quote(token));
+			}
+		}
+		Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+		return string -> compiled.matcher(string).matches();
+	}
+}
@@ -0,0 +1,57 @@
+package com.charleslobo.micronaut.rsql;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import java.util.List;
+
+/**
+ * Builds the Criteria predicate for one RSQL comparison operator.
+ * {@link RsqlCriteriaBuilder} looks handlers up by {@code ComparisonOperator} identity when a
+ * plan is compiled, so each comparison is dispatched once rather than on every query.
+ * Custom operators are registered through
+ * {@link RsqlCriteriaBuilder#RsqlCriteriaBuilder(jakarta.persistence.EntityManager, RsqlConfiguration, java.util.Map)}.
+ */
+public interface RsqlOperatorHandler {
+
+	/**
+	 * Prepares a comparison when the plan is compiled, returning the handler and the arguments
+	 * used every time the plan builds a predicate. The default converts each argument to the
+	 * field type and keeps this handler.
+	 *
+	 * @param selector the selector of the comparison
+	 * @param field the field the selector names, or {@code null} if the entity has none
+	 * @param arguments the raw arguments of the comparison
+	 */
+	default Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+		if (field == null) {
+			throw new IllegalArgumentException("Unknown field: " + selector);
+		}
+		Object[] values = new Object[arguments.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = field.convert(arguments.get(i));
+		}
+		return new Prepared(this, values);
+	}
+
+	/**
+	 * Builds the predicate for the resolved path. Arguments are the prepared values or, for
+	 * parameterized queries, ParameterExpressions bound to them.
+	 */
+	Predicate toPredicate(CriteriaBuilder cb, Path<?> path, Object[] arguments);
+
+	/**
+	 * Returns the in-memory equivalent of {@link #toPredicate}: a test of the attribute value
+	 * against the prepared arguments, used by {@link RsqlQueryPlan#asPredicate}. It is created
+	 * once per compiled comparison. The default rejects in-memory evaluation.
+	 */
+	default java.util.function.Predicate<Object> toMatcher(Object[] arguments) {
+		throw new UnsupportedOperationException("Operator cannot be evaluated in memory: " + this);
+	}
+
+	/**
+	 * A comparison prepared at compile time: the handler that builds its predicate and the
+	 * converted arguments.
+	 */
+	record Prepared(RsqlOperatorHandler handler, Object... arguments) {}
+}
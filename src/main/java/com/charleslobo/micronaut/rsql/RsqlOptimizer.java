@@ -0,0 +1,429 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a parsed RSQL AST into an equivalent, smaller one before it is compiled:
+ * <ul>
+ *   <li>nested junctions of the same kind are flattened and duplicate terms removed,</li>
+ *   <li>equality disjunctions on one selector ({@code a==1,a==2}) are merged into {@code =in=},</li>
+ *   <li>range bounds on one numeric or temporal selector in a conjunction are reduced to the
+ *       tightest lower and upper bound, and collapsed into {@code =bt=} when both are
+ *       inclusive,</li>
+ *   <li>contradictions ({@code id==5;id==6}, {@code age=gt=10;age=lt=5},
+ *       {@code a=isnull=;a=isnotnull=}) become {@link #NEVER} and tautologies
+ *       ({@code a=isnull=,a=isnotnull=}) become {@link #ALWAYS}, which are then propagated
+ *       through the enclosing junctions.</li>
+ * </ul>
+ * Only comparisons handled by the built-in operators are rewritten, so custom handlers that
+ * replace an operator keep their own semantics. Values are only compared on numeric and
+ * temporal selectors, normalized as by {@link RsqlComparables}: a string or enum filter is
+ * never found contradictory, since Java cannot know the collation or mapping the database
+ * compares it by.
+ */
+final class RsqlOptimizer {
+
+	/**
+	 * A filter that matches everything: the empty conjunction.
+	 */
+	static final Node ALWAYS = new AndNode(List.of());
+
+	/**
+	 * A filter that matches nothing: the empty disjunction.
+	 */
+	static final Node NEVER = new OrNode(List.of());
+
+	private static final List<Node> EMPTY_RANGE = List.of(NEVER);
+
+	private final Map<ComparisonOperator, RsqlOperatorHandler> handlers;
+	private final Map<Operation, ComparisonOperator> operators = new EnumMap<>(Operation.class);
+
+	RsqlOptimizer(Map<ComparisonOperator, RsqlOperatorHandler> handlers) {
+		this.handlers = handlers;
+		for (Map.Entry<ComparisonOperator, RsqlOperatorHandler> entry : handlers.entrySet()) {
+			if (entry.getValue() instanceof Operation operation) {
+				operators.putIfAbsent(operation, entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Optimizes the AST bottom-up, with an explicit stack of junctions so deeply nested input
+	 * cannot overflow the thread stack.
+	 */
+	Node optimize(Node node, Class<?> entityClass) {
+		if (!(node instanceof LogicalNode root)) {
+			return optimizeComparison(node, entityClass);
+		}
+		Deque<Junction> pending = new ArrayDeque<>();
+		pending.push(new Junction(root));
+		Node result = null;
+		while (true) {
+			Junction junction = pending.peek();
+			if (result != null) {
+				junction.add(result);
+				result = null;
+			}
+			if (!junction.isDecided() && junction.hasNext()) {
+				Node child = junction.next();
+				if (child instanceof LogicalNode logical) {
+					pending.push(new Junction(logical));
+				} else {
+					result = optimizeComparison(child, entityClass);
+				}
+				continue;
+			}
+			pending.pop();
+			result = junction.isDecided() ? junction.absorbing : finish(junction, entityClass);
+			if (pending.isEmpty()) {
+				return result;
+			}
+		}
+	}
+
+	private Node optimizeComparison(Node comparison, Class<?> entityClass) {
+		// Catches empty ranges such as a=bt=(10,5)
+		return mergeRanges(List.of(comparison), entityClass) == null ? NEVER : comparison;
+	}
+
+	/**
+	 * Simplifies a junction whose children have all been optimized.
+	 */
+	private Node finish(Junction junction, Class<?> entityClass) {
+		List<Node> children = junction.children;
+		boolean and = junction.and;
+		if (hasNullCheckPair(children)) {
+			return junction.absorbing;
+		}
+		if (and && hasDisjointEqualities(children, entityClass)) {
+			return NEVER;
+		}
+		List<Node> merged = and ? mergeRanges(children, entityClass) : mergeEqualities(children);
+		if (merged == null) {
+			return NEVER;
+		}
+		if (merged.size() == 1) {
+			return merged.get(0);
+		}
+		// An empty junction is ALWAYS or NEVER
+		return and ? new AndNode(merged) : new OrNode(merged);
+	}
+
+	/**
+	 * Returns true if some selector is checked for both null and not null, which is a
+	 * contradiction in a conjunction and a tautology in a disjunction.
+	 */
+	private boolean hasNullCheckPair(Collection<Node> children) {
+		Set<String> isNull = new HashSet<>();
+		Set<String> isNotNull = new HashSet<>();
+		for (Node child : children) {
+			if (child instanceof ComparisonNode comparison) {
+				RsqlOperatorHandler handler = handlers.get(comparison.getOperator());
+				if (handler == Operation.IS_NULL) {
+					isNull.add(comparison.getSelector());
+				} else if (handler == Operation.IS_NOT_NULL) {
+					isNotNull.add(comparison.getSelector());
+				}
+			}
+		}
+		isNull.retainAll(isNotNull);
+		return !isNull.isEmpty();
+	}
+
+	/**
+	 * Returns true if the {@code ==} and {@code =in=} terms on some numeric or temporal
+	 * selector of a conjunction have no value in common. Values are compared as the database
+	 * compares them, so {@code 1.0} and {@code 1.00} are the same value; strings and enums are
+	 * never found disjoint, as their equality depends on the column's collation and mapping.
+	 */
+	private boolean hasDisjointEqualities(Collection<Node> children, Class<?> entityClass) {
+		Map<String, Set<Object>> common = new HashMap<>();
+		for (Node child : children) {
+			if (!isEquality(child)) {
+				continue;
+			}
+			ComparisonNode comparison = (ComparisonNode) child;
+			RsqlField field = RsqlEntityMetadata.of(entityClass).findField(comparison.getSelector());
+			if (field == null || !RsqlComparables.isOrdered(field.getType())) {
+				continue;
+			}
+			Set<Object> values = new HashSet<>();
+			try {
+				for (String argument : comparison.getArguments()) {
+					values.add(RsqlComparables.normalize(field.convert(argument)));
+				}
+			} catch (RuntimeException e) {
+				// Reported when the plan is compiled
+				continue;
+			}
+			Set<Object> previous = common.putIfAbsent(comparison.getSelector(), values);
+			if (previous != null) {
+				previous.retainAll(values);
+				if (previous.isEmpty()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Merges {@code ==} and {@code =in=} terms on the same selector into one {@code =in=}.
+	 */
+	private List<Node> mergeEqualities(Collection<Node> children) {
+		ComparisonOperator in = operators.get(Operation.IN);
+		Map<String, Set<String>> values = new HashMap<>();
+		Map<String, Integer> counts = new HashMap<>();
+		if (in != null) {
+			for (Node child : children) {
+				if (isEquality(child)) {
+					ComparisonNode comparison = (ComparisonNode) child;
+					values.computeIfAbsent(comparison.getSelector(), s -> new LinkedHashSet<>())
+							.addAll(comparison.getArguments());
+					counts.merge(comparison.getSelector(), 1, Integer::sum);
+				}
+			}
+		}
+		List<Node> merged = new ArrayList<>(children.size());
+		for (Node child : children) {
+			// Nothing is counted when =in= is handled by a custom operator
+			Integer count = isEquality(child) ? counts.get(((ComparisonNode) child).getSelector()) : null;
+			if (count == null || count < 2) {
+				merged.add(child);
+				continue;
+			}
+			String selector = ((ComparisonNode) child).getSelector();
+			Set<String> selectorValues = values.remove(selector);
+			if (selectorValues != null) {
+				merged.add(new ComparisonNode(in, selector, new ArrayList<>(selectorValues)));
+			}
+		}
+		return merged;
+	}
+
+	private boolean isEquality(Node node) {
+		if (!(node instanceof ComparisonNode comparison)) {
+			return false;
+		}
+		RsqlOperatorHandler handler = handlers.get(comparison.getOperator());
+		// An equality with wildcards is a LIKE
+		return handler == Operation.IN
+				|| (handler == Operation.EQUAL && !comparison.getArguments().get(0).contains("*"));
+	}
+
+	/**
+	 * Replaces the range terms on each selector with its tightest lower and upper bound, or
+	 * returns null if the bounds of some selector admit no value.
+	 */
+	private List<Node> mergeRanges(Collection<Node> children, Class<?> entityClass) {
+		Map<String, List<ComparisonNode>> ranges = new LinkedHashMap<>();
+		for (Node child : children) {
+			if (isRange(child)) {
+				ComparisonNode comparison = (ComparisonNode) child;
+				ranges.computeIfAbsent(comparison.getSelector(), s -> new ArrayList<>()).add(comparison);
+			}
+		}
+		Map<String, List<Node>> replacements = new HashMap<>();
+		for (Map.Entry<String, List<ComparisonNode>> range : ranges.entrySet()) {
+			List<Node> replacement = tighten(range.getKey(), range.getValue(), entityClass);
+			if (replacement == EMPTY_RANGE) {
+				return null;
+			}
+			if (replacement != null && range.getValue().size() > 1) {
+				replacements.put(range.getKey(), replacement);
+			}
+		}
+		if (replacements.isEmpty()) {
+			return new ArrayList<>(children);
+		}
+		List<Node> merged = new ArrayList<>(children.size());
+		for (Node child : children) {
+			if (!isRange(child) || !replacements.containsKey(((ComparisonNode) child).getSelector())) {
+				merged.add(child);
+				continue;
+			}
+			// The bounds replace the first range term on the selector; the others are dropped
+			List<Node> replacement = replacements.put(((ComparisonNode) child).getSelector(), List.of());
+			merged.addAll(replacement);
+		}
+		return merged;
+	}
+
+	private boolean isRange(Node node) {
+		if (!(node instanceof ComparisonNode comparison)) {
+			return false;
+		}
+		RsqlOperatorHandler handler = handlers.get(comparison.getOperator());
+		return handler == Operation.GREATER_THAN
+				|| handler == Operation.GREATER_THAN_OR_EQUAL
+				|| handler == Operation.LESS_THAN
+				|| handler == Operation.LESS_THAN_OR_EQUAL
+				|| (handler == Operation.BETWEEN && comparison.getArguments().size() >= 2);
+	}
+
+	/**
+	 * Returns the tightest bounds of the range terms as new terms, {@link #EMPTY_RANGE} if they
+	 * admit no value, or null if the arguments cannot be compared and the terms must be kept as
+	 * they are. Only numeric and temporal selectors are tightened: strings order by the
+	 * column's collation and enums by their mapping, neither of which Java knows.
+	 */
+	private List<Node> tighten(String selector, List<ComparisonNode> terms, Class<?> entityClass) {
+		RsqlField field = RsqlEntityMetadata.of(entityClass).findField(selector);
+		if (field == null || !RsqlComparables.isOrdered(field.getType())) {
+			return null;
+		}
+		Bound lower = null;
+		Bound upper = null;
+		try {
+			for (ComparisonNode term : terms) {
+				List<String> arguments = term.getArguments();
+				Operation operation = (Operation) handlers.get(term.getOperator());
+				if (operation == Operation.BETWEEN) {
+					lower = Bound.tighter(lower, Bound.of(field, arguments.get(0), true), 1);
+					upper = Bound.tighter(upper, Bound.of(field, arguments.get(1), true), -1);
+				} else if (operation == Operation.GREATER_THAN
+						|| operation == Operation.GREATER_THAN_OR_EQUAL) {
+					boolean inclusive = operation == Operation.GREATER_THAN_OR_EQUAL;
+					lower = Bound.tighter(lower, Bound.of(field, arguments.get(0), inclusive), 1);
+				} else {
+					boolean inclusive = operation == Operation.LESS_THAN_OR_EQUAL;
+					upper = Bound.tighter(upper, Bound.of(field, arguments.get(0), inclusive), -1);
+				}
+			}
+		} catch (RuntimeException e) {
+			// Unconvertible or incomparable arguments are reported when the plan is compiled
+			return null;
+		}
+		if (lower != null && upper != null) {
+			int comparison = lower.value.compareTo(upper.value);
+			if (comparison > 0 || (comparison == 0 && !(lower.inclusive && upper.inclusive))) {
+				return EMPTY_RANGE;
+			}
+		}
+		ComparisonOperator between = operators.get(Operation.BETWEEN);
+		if (lower != null && upper != null && lower.inclusive && upper.inclusive && between != null) {
+			return List.of(new ComparisonNode(between, selector, List.of(lower.argument, upper.argument)));
+		}
+		List<Node> bounds = new ArrayList<>(2);
+		if (lower != null) {
+			ComparisonOperator operator = operators.get(
+					lower.inclusive ? Operation.GREATER_THAN_OR_EQUAL : Operation.GREATER_THAN);
+			if (operator == null) {
+				return null;
+			}
+			bounds.add(new ComparisonNode(operator, selector, List.of(lower.argument)));
+		}
+		if (upper != null) {
+			ComparisonOperator operator = operators.get(
+					upper.inclusive ? Operation.LESS_THAN_OR_EQUAL : Operation.LESS_THAN);
+			if (operator == null) {
+				return null;
+			}
+			bounds.add(new ComparisonNode(operator, selector, List.of(upper.argument)));
+		}
+		return bounds;
+	}
+
+	/**
+	 * One end of a range: the raw argument, its converted and normalized value and whether it
+	 * is inclusive.
+	 */
+	private record Bound(String argument, Comparable<Object> value, boolean inclusive) {
+
+		@SuppressWarnings("unchecked")
+		static Bound of(RsqlField field, String argument, boolean inclusive) {
+			Object value = RsqlComparables.normalize(field.convert(argument));
+			if (value instanceof Double number && number.isNaN()
+					|| value instanceof Float single && single.isNaN()) {
+				// NaN compares unlike any SQL value
+				throw new IllegalArgumentException("NaN bound: " + argument);
+			}
+			return new Bound(argument, (Comparable<Object>) value, inclusive);
+		}
+
+		/**
+		 * Returns the tighter of two bounds; direction is 1 for lower and -1 for upper bounds.
+		 */
+		static Bound tighter(Bound current, Bound candidate, int direction) {
+			if (current == null) {
+				return candidate;
+			}
+			int comparison = candidate.value.compareTo(current.value) * direction;
+			if (comparison > 0 || (comparison == 0 && !candidate.inclusive)) {
+				return candidate;
+			}
+			return current;
+		}
+	}
+
+	/**
+	 * A junction being optimized: its remaining children, and the optimized ones collected so
+	 * far, flattened and without duplicate comparisons, or the absorbing element once one
+	 * decided it. Nested junctions are not deduplicated, as hashing them would walk their
+	 * whole subtree at every level.
+	 */
+	private static final class Junction {
+
+		final boolean and;
+		// A NEVER in a conjunction or an ALWAYS in a disjunction decides the whole junction
+		final Node absorbing;
+		final List<Node> children = new ArrayList<>();
+		private final Set<Node> comparisons = new HashSet<>();
+		private final List<Node> input;
+		private int next;
+		private boolean decided;
+
+		Junction(LogicalNode node) {
+			this.and = node instanceof AndNode;
+			this.absorbing = and ? NEVER : ALWAYS;
+			this.input = node.getChildren();
+		}
+
+		boolean hasNext() {
+			return next < input.size();
+		}
+
+		Node next() {
+			return input.get(next++);
+		}
+
+		boolean isDecided() {
+			return decided;
+		}
+
+		void add(Node optimized) {
+			if (optimized.equals(absorbing)) {
+				decided = true;
+			} else if (optimized instanceof LogicalNode nested && (nested instanceof AndNode) == and) {
+				// Flattening also drops ALWAYS from conjunctions and NEVER from disjunctions
+				nested.getChildren().forEach(this::addChild);
+			} else {
+				addChild(optimized);
+			}
+		}
+
+		private void addChild(Node child) {
+			if (child instanceof LogicalNode || comparisons.add(child)) {
+				children.add(child);
+			}
+		}
+	}
+}
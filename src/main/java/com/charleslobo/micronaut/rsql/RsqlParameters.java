@@ -0,0 +1,77 @@
+package com.charleslobo.micronaut.rsql;
+
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.ParameterExpression;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the argument values of a Criteria query built from a plan so they can be bound
+ * as query parameters instead of being embedded as literals.
+ * With parameters, every filter of the same shape (e.g. {@code status==?;createdAt=gt=?})
+ * produces the same query, so the provider's query plan cache and the JDBC statement
+ * cache can be reused across different argument values.
+ * Create one instance per query with {@link RsqlCriteriaBuilder#createParameters()} and
+ * call {@link #applyTo} on the resulting TypedQuery.
+ */
+public final class RsqlParameters {
+
+	/**
+	 * Embeds values as literals. Stateless, so it can be shared.
+	 */
+	static final RsqlParameters INLINE = new RsqlParameters(false);
+
+	private final boolean parameterized;
+	private final List<ParameterExpression<Object>> parameters = new ArrayList<>();
+	private final List<Object> values = new ArrayList<>();
+
+	public RsqlParameters(boolean parameterized) {
+		this.parameterized = parameterized;
+	}
+
+	public boolean isParameterized() {
+		return parameterized;
+	}
+
+	/**
+	 * Returns the values unchanged when not parameterized, otherwise an array of
+	 * ParameterExpressions that will be bound to the values.
+	 */
+	@SuppressWarnings("unchecked")
+	Object[] bind(CriteriaBuilder cb, Object[] arguments) {
+		if (!parameterized || arguments.length == 0) {
+			return arguments;
+		}
+		ParameterExpression<?>[] bound = new ParameterExpression<?>[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			ParameterExpression<Object> parameter =
+					(ParameterExpression<Object>) cb.parameter(parameterType(arguments[i]));
+			parameters.add(parameter);
+			values.add(arguments[i]);
+			bound[i] = parameter;
+		}
+		return bound;
+	}
+
+	/**
+	 * Binds the collected values to the query.
+	 */
+	public <Q extends TypedQuery<?>> Q applyTo(Q query) {
+		for (int i = 0; i < parameters.size(); i++) {
+			query.setParameter(parameters.get(i), values.get(i));
+		}
+		return query;
+	}
+
+	public int size() {
+		return parameters.size();
+	}
+
+	private static Class<?> parameterType(Object value) {
+		if (value instanceof Enum<?> constant) {
+			return constant.getDeclaringClass();
+		}
+		return value.getClass();
+	}
+}
@@ -0,0 +1,352 @@
+package com.charleslobo.micronaut.rsql;
+
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An RSQL parser producing the same AST as the JavaCC-generated {@code RSQLParser}, in a single
+ * pass over the string without token objects, regular expressions or recursion: nested groups
+ * are kept on an explicit stack, so arbitrarily deep input cannot overflow the thread stack.
+ * Syntax errors are reported as {@link RsqlSyntaxException}s carrying the
+ * position, without a stack trace.
+ * Grammar (matching rsql-parser 2.1):
+ * <pre>
+ * input      = or EOF
+ * or         = and ( ( "," | " or " ) and )*
+ * and        = constraint ( ( ";" | " and " ) constraint )*
+ * constraint = "(" or ")" | selector operator arguments
+ * operator   = ( "=" alpha* | "!" ) "=" | ( "&gt;" | "&lt;" ) "="?
+ * arguments  = "(" argument ( ( "," | " or " ) argument )* ")" | argument
+ * argument   = unreserved | 'single quoted' | "double quoted"
+ * </pre>
+ * Spaces and tabs between tokens are skipped.
+ */
+public final class RsqlParser {
+
+	private final Map<String, ComparisonOperator> operators;
+
+	public RsqlParser(Set<ComparisonOperator> operators) {
+		Map<String, ComparisonOperator> bySymbol = new HashMap<>();
+		for (ComparisonOperator operator : operators) {
+			for (String symbol : operator.getSymbols()) {
+				bySymbol.put(symbol, operator);
+			}
+		}
+		this.operators = Map.copyOf(bySymbol);
+	}
+
+	public Node parse(String rsql) {
+		if (rsql == null) {
+			throw new IllegalArgumentException("query must not be null");
+		}
+		return new Parse(rsql).input();
+	}
+
+	private static boolean isReserved(char c) {
+		switch (c) {
+			case '"':
+			case '\'':
+			case '(':
+			case ')':
+			case ';':
+			case ',':
+			case '=':
+			case '<':
+			case '>':
+			case '!':
+			case '~':
+			case ' ':
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isAlpha(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	/**
+	 * State of one parse: the input and the current position.
+	 */
+	private final class Parse {
+		private final String input;
+		private final int length;
+		private int pos;
+
+		Parse(String input) {
+			this.input = input;
+			this.length = input.length();
+		}
+
+		/**
+		 * Parses the input with an explicit stack of the groups left open, so nesting depth is
+		 * bounded by the heap rather than the thread stack. After each constraint, an AND
+		 * connector continues the current conjunction, an OR connector starts a new one, and
+		 * anything else closes the innermost group.
+		 */
+		Node input() {
+			Deque<Group> open = new ArrayDeque<>();
+			Group group = new Group();
+			while (true) {
+				skipWhitespace();
+				if (pos < length && input.charAt(pos) == '(') {
+					pos++;
+					open.push(group);
+					group = new Group();
+					continue;
+				}
+				Node node = comparison();
+				while (true) {
+					group.add(node);
+					if (acceptAnd()) {
+						break;
+					}
+					if (acceptOr()) {
+						group.nextConjunction();
+						break;
+					}
+					node = group.finish();
+					if (open.isEmpty()) {
+						skipWhitespace();
+						if (pos < length) {
+							throw error("Unexpected character '" + input.charAt(pos) + "'");
+						}
+						return node;
+					}
+					expect(')');
+					group = open.pop();
+				}
+			}
+		}
+
+		private Node comparison() {
+			String selector = unreserved();
+			if (selector == null) {
+				throw error("Expected selector");
+			}
+			skipWhitespace();
+			int operatorStart = pos;
+			String symbol = operator();
+			ComparisonOperator operator = operators.get(symbol);
+			if (operator == null) {
+				throw new RsqlSyntaxException("Unknown operator: " + symbol, operatorStart);
+			}
+			int argumentsStart = pos;
+			List<String> arguments = arguments();
+			try {
+				return new ComparisonNode(operator, selector, arguments);
+			} catch (IllegalArgumentException e) {
+				// e.g. a list of values for a single-value operator
+				throw new RsqlSyntaxException(e.getMessage(), argumentsStart);
+			}
+		}
+
+		private String operator() {
+			if (pos >= length) {
+				throw error("Expected operator");
+			}
+			int start = pos;
+			char c = input.charAt(pos);
+			if (c == '>' || c == '<') {
+				pos++;
+				if (pos < length && input.charAt(pos) == '=') {
+					pos++;
+				}
+				return input.substring(start, pos);
+			}
+			if (c == '=') {
+				pos++;
+				while (pos < length && isAlpha(input.charAt(pos))) {
+					pos++;
+				}
+			} else if (c == '!') {
+				pos++;
+			} else {
+				throw error("Expected operator");
+			}
+			if (pos >= length || input.charAt(pos) != '=') {
+				throw error("Malformed operator");
+			}
+			pos++;
+			return input.substring(start, pos);
+		}
+
+		private List<String> arguments() {
+			skipWhitespace();
+			if (pos < length && input.charAt(pos) == '(') {
+				pos++;
+				List<String> arguments = new ArrayList<>(4);
+				arguments.add(argument());
+				while (acceptOr()) {
+					arguments.add(argument());
+				}
+				expect(')');
+				return arguments;
+			}
+			return Collections.singletonList(argument());
+		}
+
+		private String argument() {
+			skipWhitespace();
+			if (pos < length) {
+				char c = input.charAt(pos);
+				if (c == '\'' || c == '"') {
+					return quoted(c);
+				}
+			}
+			String value = unreserved();
+			if (value == null) {
+				throw error("Expected argument");
+			}
+			return value;
+		}
+
+		/**
+		 * Reads a quoted argument, dropping the quotes and the backslash of escaped characters.
+		 */
+		private String quoted(char quote) {
+			int start = pos;
+			pos++;
+			StringBuilder unescaped = null;
+			int segment = pos;
+			while (pos < length) {
+				char c = input.charAt(pos);
+				if (c == quote) {
+					String value =
+							unescaped == null
+									? input.substring(segment, pos)
+									: unescaped.append(input, segment, pos).toString();
+					pos++;
+					return value;
+				}
+				if (c == '\\') {
+					if (pos + 1 >= length) {
+						break;
+					}
+					if (unescaped == null) {
+						unescaped = new StringBuilder(length - segment);
+					}
+					unescaped.append(input, segment, pos);
+					segment = pos + 1;
+					pos += 2;
+				} else {
+					pos++;
+				}
+			}
+			throw new RsqlSyntaxException("Unterminated quoted string", start);
+		}
+
+		/**
+		 * Reads a run of unreserved characters, or returns null if there is none.
+		 */
+		private String unreserved() {
+			int start = pos;
+			while (pos < length && !isReserved(input.charAt(pos))) {
+				pos++;
+			}
+			return pos == start ? null : input.substring(start, pos);
+		}
+
+		private boolean acceptOr() {
+			skipWhitespace();
+			if (pos < length && input.charAt(pos) == ',') {
+				pos++;
+				return true;
+			}
+			if (input.startsWith(" or ", pos)) {
+				pos += 4;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean acceptAnd() {
+			skipWhitespace();
+			if (pos < length && input.charAt(pos) == ';') {
+				pos++;
+				return true;
+			}
+			if (input.startsWith(" and ", pos)) {
+				pos += 5;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			skipWhitespace();
+			if (pos >= length || input.charAt(pos) != c) {
+				throw error("Expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		/**
+		 * Skips spaces and tabs, stopping before the " and " / " or " keywords. As in the JavaCC
+		 * lexer, a tab followed by unreserved characters starts an unreserved string instead.
+		 */
+		private void skipWhitespace() {
+			while (pos < length) {
+				char c = input.charAt(pos);
+				if (c == ' ') {
+					if (input.startsWith(" and ", pos) || input.startsWith(" or ", pos)) {
+						return;
+					}
+				} else if (c != '\t' || (pos + 1 < length && !isReserved(input.charAt(pos + 1)))) {
+					return;
+				}
+				pos++;
+			}
+		}
+
+		private RsqlSyntaxException error(String message) {
+			return new RsqlSyntaxException(message, pos);
+		}
+	}
+
+	/**
+	 * A group being parsed: the conjunctions completed so far and the current one. Single
+	 * terms are not wrapped in a junction.
+	 */
+	private static final class Group {
+		private List<Node> disjunction;
+		private List<Node> conjunction = new ArrayList<>(4);
+
+		void add(Node node) {
+			conjunction.add(node);
+		}
+
+		void nextConjunction() {
+			if (disjunction == null) {
+				disjunction = new ArrayList<>(4);
+			}
+			disjunction.add(collapse(conjunction));
+			conjunction = new ArrayList<>(4);
+		}
+
+		Node finish() {
+			Node last = collapse(conjunction);
+			if (disjunction == null) {
+				return last;
+			}
+			disjunction.add(last);
+			return new OrNode(disjunction);
+		}
+
+		private static Node collapse(List<Node> conjunction) {
+			return conjunction.size() == 1 ? conjunction.get(0) : new AndNode(conjunction);
+		}
+	}
+}
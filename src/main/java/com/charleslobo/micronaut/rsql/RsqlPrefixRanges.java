@@ -0,0 +1,51 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlOperatorHandler.Prepared;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+
+/**
+ * Rewrites pure prefix patterns ({@code name==abc*}) into the half-open range
+ * {@code name >= 'abc' and name < 'abd'}, which a B-tree index serves with a range seek even
+ * where the database would not use it for {@code LIKE 'abc%'}.
+ * The range is computed in Java's UTF-16 code unit order, so it only matches the LIKE for
+ * columns with a binary collation or one that orders the prefix's characters the same way.
+ */
+final class RsqlPrefixRanges {
+
+	private RsqlPrefixRanges() {}
+
+	/**
+	 * Returns the range for a prepared wildcard LIKE or NOT LIKE of the given value, or the
+	 * prepared comparison unchanged if the value is not a non-empty prefix followed by a single
+	 * trailing {@code *}.
+	 */
+	static Prepared apply(Prepared prepared, String value) {
+		int wildcard = value.indexOf('*');
+		if (wildcard <= 0 || wildcard != value.length() - 1) {
+			return prepared;
+		}
+		boolean negated = prepared.handler() == Operation.WILDCARD_NOT_LIKE;
+		String prefix = value.substring(0, wildcard);
+		String successor = successor(prefix);
+		if (successor == null) {
+			// Every string starting with the prefix is just >= it
+			return new Prepared(negated ? Operation.LESS_THAN : Operation.GREATER_THAN_OR_EQUAL, prefix);
+		}
+		return new Prepared(negated ? Operation.NOT_RANGE : Operation.RANGE, prefix, successor);
+	}
+
+	/**
+	 * Returns the smallest string greater than every string starting with the prefix, or null
+	 * if there is none.
+	 */
+	static String successor(String prefix) {
+		int last = prefix.length() - 1;
+		while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+			last--;
+		}
+		if (last < 0) {
+			return null;
+		}
+		return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+	}
+}
@@ -0,0 +1,233 @@
+package com.charleslobo.micronaut.rsql;
+
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan.Operation;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores a parsed filter and enforces the complexity limits of {@link RsqlConfiguration} in one
+ * pass over the AST, before the filter is optimized or compiled. The walk uses an explicit
+ * stack, so deeply nested input is rejected rather than overflowing the thread stack.
+ * The cost of a filter is the sum over its comparisons of the operator weight, plus
+ * {@code rsql.leading-wildcard-cost} for patterns starting with a wildcard and
+ * {@code rsql.unindexed-cost} for fields that are not indexed. Depth is also checked on the raw
+ * string by {@link #checkNesting(String)}, before it is parsed.
+ */
+final class RsqlQueryLimits {
+
+	/**
+	 * Nesting limit applied when {@code rsql.max-depth} is unlimited but the configured parser is
+	 * the recursive JavaCC one, well below the depth that overflows a default thread stack.
+	 */
+	static final int RECURSIVE_PARSER_MAX_DEPTH = 500;
+
+	private static final Map<Operation, Integer> DEFAULT_COSTS = new EnumMap<>(Operation.class);
+
+	static {
+		for (Operation operation : Operation.values()) {
+			DEFAULT_COSTS.put(operation, 1);
+		}
+		DEFAULT_COSTS.put(Operation.GREATER_THAN, 2);
+		DEFAULT_COSTS.put(Operation.GREATER_THAN_OR_EQUAL, 2);
+		DEFAULT_COSTS.put(Operation.LESS_THAN, 2);
+		DEFAULT_COSTS.put(Operation.LESS_THAN_OR_EQUAL, 2);
+		DEFAULT_COSTS.put(Operation.BETWEEN, 2);
+		// Negations rarely use an index
+		DEFAULT_COSTS.put(Operation.NOT_EQUAL, 3);
+		DEFAULT_COSTS.put(Operation.NOT_BETWEEN, 3);
+		DEFAULT_COSTS.put(Operation.NOT_IN, 3);
+		DEFAULT_COSTS.put(Operation.LIKE, 5);
+		DEFAULT_COSTS.put(Operation.NOT_LIKE, 5);
+		// lower(column) defeats a plain index on the column
+		DEFAULT_COSTS.put(Operation.LOWER_EQUAL, 5);
+		DEFAULT_COSTS.put(Operation.LOWER_LIKE, 5);
+		DEFAULT_COSTS.put(Operation.LOWER_NOT_LIKE, 5);
+	}
+
+	private final Map<ComparisonOperator, RsqlOperatorHandler> handlers;
+	private final Map<ComparisonOperator, Integer> costs = new IdentityHashMap<>();
+	private final int maxDepth;
+	private final int maxNesting;
+	private final int maxComparisons;
+	private final int maxArguments;
+	private final int maxWildcards;
+	private final int maxCost;
+	private final int leadingWildcardCost;
+	private final int unindexedCost;
+
+	RsqlQueryLimits(
+			RsqlConfiguration configuration, Map<ComparisonOperator, RsqlOperatorHandler> handlers) {
+		this.handlers = handlers;
+		Map<String, Integer> configured = configuration.getOperatorCosts();
+		for (Map.Entry<ComparisonOperator, RsqlOperatorHandler> entry : handlers.entrySet()) {
+			Integer cost =
+					entry.getValue() instanceof Operation operation ? DEFAULT_COSTS.get(operation) : 1;
+			for (String symbol : entry.getKey().getSymbols()) {
+				cost = configured.getOrDefault(symbol, cost);
+			}
+			costs.put(entry.getKey(), cost);
+		}
+		this.maxDepth = configuration.getMaxDepth();
+		this.maxNesting =
+				maxDepth > 0 || configuration.getParser() != RsqlConfiguration.ParserType.RSQL_PARSER
+						? maxDepth
+						: RECURSIVE_PARSER_MAX_DEPTH;
+		this.maxComparisons = configuration.getMaxComparisons();
+		this.maxArguments = configuration.getMaxArguments();
+		this.maxWildcards = configuration.getMaxWildcards();
+		this.maxCost = configuration.getMaxCost();
+		this.leadingWildcardCost = configuration.getLeadingWildcardCost();
+		this.unindexedCost = configuration.getUnindexedCost();
+	}
+
+	/**
+	 * Fails if the parenthesized groups of an RSQL string nest deeper than
+	 * {@code rsql.max-depth}, or {@link #RECURSIVE_PARSER_MAX_DEPTH} for the JavaCC parser when
+	 * that is unlimited. Runs before parsing, so input nested deep enough to overflow a recursive
+	 * parser is rejected first. Every group counts, redundant parentheses included; argument
+	 * lists and quoted values do not.
+	 */
+	void checkNesting(String rsql) {
+		if (maxNesting <= 0 || rsql == null) {
+			return;
+		}
+		int depth = 0;
+		boolean inArguments = false;
+		char quote = 0;
+		char previous = 0;
+		for (int i = 0; i < rsql.length(); i++) {
+			char c = rsql.charAt(i);
+			if (quote != 0) {
+				if (c == '\\') {
+					i++;
+				} else if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(') {
+				// A parenthesis right after an operator opens its argument list
+				if (previous == '=' || previous == '<' || previous == '>') {
+					inArguments = true;
+				} else if (++depth > maxNesting) {
+					throw new RsqlLimitExceededException(
+							"RSQL filter exceeds the maximum depth of " + maxNesting);
+				}
+			} else if (c == ')') {
+				if (inArguments) {
+					inArguments = false;
+				} else if (depth > 0) {
+					depth--;
+				}
+			}
+			if (!Character.isWhitespace(c)) {
+				previous = c;
+			}
+		}
+	}
+
+	/**
+	 * Returns the cost of the filter, failing if it exceeds a limit.
+	 */
+	int check(Node root, Class<?> entityClass) {
+		RsqlEntityMetadata metadata = RsqlEntityMetadata.of(entityClass);
+		Deque<Node> nodes = new ArrayDeque<>();
+		Deque<Integer> depths = new ArrayDeque<>();
+		nodes.push(root);
+		depths.push(1);
+		int comparisons = 0;
+		int wildcards = 0;
+		long cost = 0;
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			int depth = depths.pop();
+			if (node instanceof LogicalNode logical) {
+				// Depth counts nested AND/OR groups
+				if (maxDepth > 0 && depth > maxDepth) {
+					throw new RsqlLimitExceededException(
+							"RSQL filter exceeds the maximum depth of " + maxDepth);
+				}
+				for (Node child : logical.getChildren()) {
+					nodes.push(child);
+					depths.push(depth + 1);
+				}
+				continue;
+			}
+			ComparisonNode comparison = (ComparisonNode) node;
+			List<String> arguments = comparison.getArguments();
+			if (maxComparisons > 0 && ++comparisons > maxComparisons) {
+				throw new RsqlLimitExceededException(
+						"RSQL filter exceeds the maximum of " + maxComparisons + " comparisons");
+			}
+			if (maxArguments > 0 && arguments.size() > maxArguments) {
+				throw new RsqlLimitExceededException(
+						"Comparison on " + comparison.getSelector() + " exceeds the maximum of "
+								+ maxArguments + " arguments");
+			}
+			cost += costs.getOrDefault(comparison.getOperator(), 1);
+			if (arguments.size() > 2) {
+				// Each further =in= value adds to the statement and its plan
+				cost += arguments.size() - 2;
+			}
+			RsqlOperatorHandler handler = handlers.get(comparison.getOperator());
+			String matchAny =
+					handler instanceof Operation operation ? wildcards(operation) : null;
+			if (matchAny != null && containsAny(arguments.get(0), matchAny)) {
+				if (maxWildcards > 0 && ++wildcards > maxWildcards) {
+					throw new RsqlLimitExceededException(
+							"RSQL filter exceeds the maximum of " + maxWildcards + " wildcard comparisons");
+				}
+				if (matchAny.indexOf(arguments.get(0).charAt(0)) >= 0) {
+					cost += leadingWildcardCost;
+				}
+			}
+			RsqlField field = metadata.findField(comparison.getSelector());
+			if (field != null && !field.isIndexed()) {
+				cost += unindexedCost;
+			}
+		}
+		if (maxCost > 0 && cost > maxCost) {
+			throw new RsqlLimitExceededException(
+					"RSQL filter cost " + cost + " exceeds the maximum of " + maxCost);
+		}
+		return (int) Math.min(cost, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the wildcard characters of the operations that compile to LIKE, or null. Values of
+	 * {@code ==} have {@code %} and {@code _} escaped, so only {@code *} matches anything there.
+	 */
+	private static String wildcards(Operation operation) {
+		switch (operation) {
+			case EQUAL:
+			case NOT_EQUAL:
+				return "*";
+			case LIKE:
+			case NOT_LIKE:
+			case LOWER_LIKE:
+			case LOWER_NOT_LIKE:
+				return "%_";
+			default:
+				return null;
+		}
+	}
+
+	private static boolean containsAny(String value, String characters) {
+		for (int i = 0; i < value.length(); i++) {
+			if (characters.indexOf(value.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,782 @@
+package com.charleslobo.micronaut.rsql;
+
+import cz.jirutka.rsql.parser.ast.Node;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A compiled RSQL filter for one entity class, created by {@link RsqlCriteriaBuilder#compile}.
+ * Parsing, field resolution, argument conversion and operator selection all happen once, when
+ * the plan is compiled; {@link #toPredicate} only assembles the Criteria objects.
+ * Plans are immutable and can be cached and shared between threads.
+ */
+public final class RsqlQueryPlan<T> {
+
+	/**
+	 * Nesting depth up to which a plan's in-memory predicate is built from nested matchers, and
+	 * compiled with {@code rsql.generated-matchers}. Each level takes a stack frame when an
+	 * entity is tested, so deeper plans are tested by an iterative walk.
+	 */
+	static final int MAX_NESTED_MATCHER_DEPTH = 200;
+
+	private final String rsql;
+	private final Class<T> entityClass;
+	private final Node node;
+	private final Step step;
+	private final int cost;
+	private final RsqlMatcherCompiler matcherCompiler;
+	private volatile java.util.function.Predicate<Object> matcher;
+	private volatile String fingerprint;
+
+	RsqlQueryPlan(String rsql, Class<T> entityClass, Node node, Step step, int cost) {
+		this(rsql, entityClass, node, step, cost, null);
+	}
+
+	RsqlQueryPlan(
+			String rsql,
+			Class<T> entityClass,
+			Node node,
+			Step step,
+			int cost,
+			RsqlMatcherCompiler matcherCompiler) {
+		this.rsql = rsql;
+		this.entityClass = entityClass;
+		this.node = node;
+		this.step = step;
+		this.cost = cost;
+		this.matcherCompiler = matcherCompiler;
+	}
+
+	public String getRsql() {
+		return rsql;
+	}
+
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * Returns the parsed AST, or {@code null} if the RSQL string was blank.
+	 */
+	public Node getNode() {
+		return node;
+	}
+
+	/**
+	 * Returns the filter with argument values replaced by {@code ?} (e.g.
+	 * {@code status==?;age=gt=?}), or an empty string if the RSQL string was blank. At most
+	 * 200 characters: longer shapes keep a prefix followed by {@code #} and a digest of the whole
+	 * shape. Computed on first use.
+	 */
+	public String getFingerprint() {
+		String result = fingerprint;
+		if (result == null) {
+			result = node == null ? "" : RsqlFingerprints.of(node);
+			fingerprint = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the compiled filter, or {@code null} if the plan has none.
+	 */
+	Step getStep() {
+		return step;
+	}
+
+	/**
+	 * Returns the estimated cost of the parsed filter, zero for a blank one. Callers can use it
+	 * to throttle expensive queries below the {@code rsql.max-cost} limit.
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * Returns false if the RSQL string was blank, or the filter was found to always hold, and
+	 * the plan matches every entity.
+	 */
+	public boolean hasFilter() {
+		return step != null;
+	}
+
+	/**
+	 * Returns true if the filter was found to be a contradiction when the plan was compiled
+	 * (only with {@code rsql.optimize-filters}), so it matches no entity and does not need to
+	 * be run. Repositories return empty results for such plans without querying, so only
+	 * contradictions the database would agree with are detected: on numeric and temporal
+	 * values, and on null checks, never on string or enum values.
+	 */
+	public boolean isUnsatisfiable() {
+		return step instanceof Junction junction && junction.isAlwaysFalse();
+	}
+
+	/**
+	 * Builds the Predicate for this plan against the given root, or returns {@code null} if the
+	 * plan has no filter.
+	 */
+	public Predicate toPredicate(Root<T> root, CriteriaBuilder cb) {
+		return toPredicate(root, cb, RsqlParameters.INLINE);
+	}
+
+	/**
+	 * Builds the Predicate for this plan, binding argument values through the given parameters.
+	 */
+	public Predicate toPredicate(Root<T> root, CriteriaBuilder cb, RsqlParameters parameters) {
+		return step == null ? null : step.toPredicate(root, cb, parameters);
+	}
+
+	/**
+	 * Returns the plan as an in-memory predicate over entity instances, with the semantics of
+	 * the SQL predicate: a comparison on a {@code null} attribute only matches IS NULL, and
+	 * patterns match case-sensitively. Each comparison reads its attribute through a cached
+	 * {@link RsqlField#accessor()} and tests it with a matcher built from the already
+	 * converted arguments, so testing an entity performs no parsing, lookup or conversion.
+	 * The predicate is built on first use and shared between threads.
+	 * <p>
+	 * With {@code rsql.generated-matchers}, the first call also starts compiling the plan into
+	 * hidden classes in the background; calls made once it completes return the compiled
+	 * predicate, so callers filtering repeatedly should call this method each time rather than
+	 * keep the first result. Plans nested deeper than {@value #MAX_NESTED_MATCHER_DEPTH}
+	 * levels are not compiled.
+	 *
+	 * @throws UnsupportedOperationException if a custom operator does not implement
+	 *     {@link RsqlOperatorHandler#toMatcher}
+	 */
+	@SuppressWarnings("unchecked")
+	public java.util.function.Predicate<T> asPredicate() {
+		java.util.function.Predicate<Object> result = matcher;
+		if (result == null) {
+			result = step == null ? entity -> true : step.toMatcher();
+			matcher = result;
+			if (matcherCompiler != null && step != null && !(result instanceof IterativeMatcher)) {
+				matcherCompiler.compile(this, compiled -> matcher = compiled);
+				result = matcher;
+			}
+		}
+		return (java.util.function.Predicate<T>) result;
+	}
+
+	@Override
+	public String toString() {
+		return "RsqlQueryPlan[" + entityClass.getSimpleName() + ": " + rsql + "]";
+	}
+
+	/**
+	 * A compiled node of the RSQL AST.
+	 */
+	abstract static class Step {
+		abstract Predicate toPredicate(Root<?> root, CriteriaBuilder cb, RsqlParameters parameters);
+
+		abstract java.util.function.Predicate<Object> toMatcher();
+	}
+
+	/**
+	 * An AND or OR of compiled child nodes.
+	 */
+	static final class Junction extends Step {
+		private final boolean and;
+		private final Step[] children;
+
+		Junction(boolean and, Step[] children) {
+			this.and = and;
+			this.children = children;
+		}
+
+		boolean isAnd() {
+			return and;
+		}
+
+		Step[] children() {
+			return children;
+		}
+
+		/**
+		 * An empty disjunction, the compiled form of a contradiction.
+		 */
+		boolean isAlwaysFalse() {
+			return !and && children.length == 0;
+		}
+
+		/**
+		 * Builds the predicates of nested junctions in a post-order walk with an explicit chain
+		 * of frames, so deep plans cannot overflow the thread stack. Children are visited left
+		 * to right, keeping parameters in filter order.
+		 */
+		@Override
+		Predicate toPredicate(Root<?> root, CriteriaBuilder cb, RsqlParameters parameters) {
+			Frame frame = new Frame(this, null);
+			while (true) {
+				Step[] steps = frame.junction.children;
+				if (frame.next < steps.length) {
+					if (steps[frame.next] instanceof Junction junction) {
+						frame = new Frame(junction, frame);
+					} else {
+						frame.predicates[frame.next] = steps[frame.next].toPredicate(root, cb, parameters);
+						frame.next++;
+					}
+					continue;
+				}
+				Predicate predicate =
+						frame.junction.and ? cb.and(frame.predicates) : cb.or(frame.predicates);
+				frame = frame.parent;
+				if (frame == null) {
+					return predicate;
+				}
+				frame.predicates[frame.next++] = predicate;
+			}
+		}
+
+		/**
+		 * Tests the children in order, stopping at the first that decides the junction. Junctions
+		 * nested deeper than {@link #MAX_NESTED_MATCHER_DEPTH} are tested by an iterative walk
+		 * instead of nested matchers, which would add a stack frame per level to each test.
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		java.util.function.Predicate<Object> toMatcher() {
+			int depth = (Integer) fold(step -> 0, (junction, depths) -> {
+				int deepest = 0;
+				for (Object childDepth : depths) {
+					deepest = Math.max(deepest, (Integer) childDepth);
+				}
+				return deepest + 1;
+			});
+			if (depth > MAX_NESTED_MATCHER_DEPTH) {
+				return new IterativeMatcher((MatcherNode) fold(
+						Step::toMatcher, (junction, matchers) -> new MatcherNode(junction.and, matchers)));
+			}
+			return (java.util.function.Predicate<Object>) fold(
+					Step::toMatcher, (junction, matchers) -> junction.combine(matchers));
+		}
+
+		/**
+		 * Combines the matchers of the children into the matcher of this junction.
+		 */
+		@SuppressWarnings("unchecked")
+		private java.util.function.Predicate<Object> combine(Object[] children) {
+			java.util.function.Predicate<Object>[] matchers =
+					Arrays.copyOf(children, children.length, java.util.function.Predicate[].class);
+			if (matchers.length == 2) {
+				java.util.function.Predicate<Object> first = matchers[0];
+				java.util.function.Predicate<Object> second = matchers[1];
+				return and
+						? entity -> first.test(entity) && second.test(entity)
+						: entity -> first.test(entity) || second.test(entity);
+			}
+			boolean and = this.and;
+			return entity -> {
+				for (java.util.function.Predicate<Object> matcher : matchers) {
+					if (matcher.test(entity) != and) {
+						return !and;
+					}
+				}
+				return and;
+			};
+		}
+
+		/**
+		 * Folds the junction bottom-up in a post-order walk with an explicit chain of frames, like
+		 * {@link #toPredicate}: each comparison is mapped by {@code leaf}, and each junction by
+		 * {@code combine} from the results of its children, in order.
+		 */
+		Object fold(Function<Step, Object> leaf, BiFunction<Junction, Object[], Object> combine) {
+			FoldFrame frame = new FoldFrame(this, null);
+			while (true) {
+				Step[] steps = frame.junction.children;
+				if (frame.next < steps.length) {
+					if (steps[frame.next] instanceof Junction junction) {
+						frame = new FoldFrame(junction, frame);
+					} else {
+						frame.results[frame.next] = leaf.apply(steps[frame.next]);
+						frame.next++;
+					}
+					continue;
+				}
+				Object result = combine.apply(frame.junction, frame.results);
+				frame = frame.parent;
+				if (frame == null) {
+					return result;
+				}
+				frame.results[frame.next++] = result;
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder result = new StringBuilder(and ? "AND(" : "OR(");
+			for (int i = 0; i < children.length; i++) {
+				result.append(i == 0 ? "" : ", ").append(children[i]);
+			}
+			return result.append(')').toString();
+		}
+
+		/**
+		 * A junction whose children are being folded.
+		 */
+		private static final class FoldFrame {
+			final Junction junction;
+			final Object[] results;
+			final FoldFrame parent;
+			int next;
+
+			FoldFrame(Junction junction, FoldFrame parent) {
+				this.junction = junction;
+				this.results = new Object[junction.children.length];
+				this.parent = parent;
+			}
+		}
+
+		/**
+		 * A junction whose children are being built.
+		 */
+		private static final class Frame {
+			final Junction junction;
+			final Predicate[] predicates;
+			final Frame parent;
+			int next;
+
+			Frame(Junction junction, Frame parent) {
+				this.junction = junction;
+				this.predicates = new Predicate[junction.children.length];
+				this.parent = parent;
+			}
+		}
+	}
+
+	/**
+	 * A junction of the matchers of a deeply nested plan: comparison matchers and nested nodes.
+	 */
+	private record MatcherNode(boolean and, Object[] children) {}
+
+	/**
+	 * Tests entities against a deeply nested plan, walking its {@link MatcherNode}s with an
+	 * explicit chain of frames so that testing needs no stack frame per level.
+	 */
+	private static final class IterativeMatcher implements java.util.function.Predicate<Object> {
+		private final MatcherNode root;
+
+		IterativeMatcher(MatcherNode root) {
+			this.root = root;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean test(Object entity) {
+			Frame frame = new Frame(root, null);
+			Boolean returned = null;
+			while (true) {
+				MatcherNode node = frame.node;
+				// A nested junction that was just tested may already decide this one
+				boolean decided = returned != null && returned != node.and();
+				returned = null;
+				while (!decided && frame.next < node.children().length) {
+					Object child = node.children()[frame.next++];
+					if (child instanceof MatcherNode nested) {
+						frame = new Frame(nested, frame);
+						break;
+					}
+					decided = ((java.util.function.Predicate<Object>) child).test(entity) != node.and();
+				}
+				if (frame.node != node) {
+					continue;
+				}
+				boolean result = decided ? !node.and() : node.and();
+				frame = frame.parent;
+				if (frame == null) {
+					return result;
+				}
+				returned = result;
+			}
+		}
+
+		/**
+		 * A node whose children are being tested.
+		 */
+		private static final class Frame {
+			final MatcherNode node;
+			final Frame parent;
+			int next;
+
+			Frame(MatcherNode node, Frame parent) {
+				this.node = node;
+				this.parent = parent;
+			}
+		}
+	}
+
+	/**
+	 * A single comparison with its attribute, operator handler and already converted arguments.
+	 */
+	static final class Comparison extends Step {
+		private final String attribute;
+		private final RsqlField field;
+		private final RsqlOperatorHandler handler;
+		private final Object[] values;
+
+		Comparison(String attribute, RsqlField field, RsqlOperatorHandler handler, Object... values) {
+			this.attribute = attribute;
+			this.field = field;
+			this.handler = handler;
+			this.values = values;
+		}
+
+		@Override
+		Predicate toPredicate(Root<?> root, CriteriaBuilder cb, RsqlParameters parameters) {
+			return handler.toPredicate(cb, root.get(attribute), parameters.bind(cb, values));
+		}
+
+		@Override
+		java.util.function.Predicate<Object> toMatcher() {
+			Function<Object, Object> accessor = accessor();
+			java.util.function.Predicate<Object> test = valueMatcher();
+			return entity -> test.test(accessor.apply(entity));
+		}
+
+		String attribute() {
+			return attribute;
+		}
+
+		RsqlOperatorHandler handler() {
+			return handler;
+		}
+
+		Object[] values() {
+			return values;
+		}
+
+		Function<Object, Object> accessor() {
+			if (field == null) {
+				throw new IllegalArgumentException("Unknown field: " + attribute);
+			}
+			return field.accessor();
+		}
+
+		/**
+		 * Returns the test of the attribute value.
+		 */
+		java.util.function.Predicate<Object> valueMatcher() {
+			return handler.toMatcher(values);
+		}
+
+		@Override
+		public String toString() {
+			return attribute + " " + handler + " " + Arrays.toString(values);
+		}
+	}
+
+	/**
+	 * The handlers of the built-in operators. LIKE patterns and case-insensitive arguments are
+	 * prepared when the plan is compiled, and fields annotated with {@link RsqlCaseInsensitive}
+	 * switch to an {@link RsqlCaseInsensitiveHandler}. Values are either plain arguments or, for
+	 * parameterized queries, ParameterExpressions.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	enum Operation implements RsqlOperatorHandler {
+		IS_NULL {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				// The argument (e.g. =isnull=true) is ignored
+				return new Prepared(this);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return cb.isNull(path);
+			}
+		},
+		IS_NOT_NULL {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return new Prepared(this);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return cb.isNotNull(path);
+			}
+		},
+		EQUAL {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				// A value with wildcards becomes a LIKE pattern
+				return wildcard(super.prepare(selector, field, arguments), WILDCARD_LIKE);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e ? cb.equal(path, e) : cb.equal(path, values[0]);
+			}
+		},
+		NOT_EQUAL {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return wildcard(super.prepare(selector, field, arguments), WILDCARD_NOT_LIKE);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.notEqual(path, e)
+						: cb.notEqual(path, values[0]);
+			}
+		},
+		GREATER_THAN {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.greaterThan(path, e)
+						: cb.greaterThan(path, (Comparable) values[0]);
+			}
+		},
+		GREATER_THAN_OR_EQUAL {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.greaterThanOrEqualTo(path, e)
+						: cb.greaterThanOrEqualTo(path, (Comparable) values[0]);
+			}
+		},
+		LESS_THAN {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.lessThan(path, e)
+						: cb.lessThan(path, (Comparable) values[0]);
+			}
+		},
+		LESS_THAN_OR_EQUAL {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.lessThanOrEqualTo(path, e)
+						: cb.lessThanOrEqualTo(path, (Comparable) values[0]);
+			}
+		},
+		BETWEEN {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return super.prepare(selector, field, requireTwo(arguments, "Between"));
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return between(cb, path, values);
+			}
+		},
+		NOT_BETWEEN {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return super.prepare(selector, field, requireTwo(arguments, "Not between"));
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return cb.not(between(cb, path, values));
+			}
+		},
+		IN {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values instanceof Expression[] e ? path.in(e) : path.in(values);
+			}
+		},
+		NOT_IN {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return cb.not(values instanceof Expression[] e ? path.in(e) : path.in(values));
+			}
+		},
+		LIKE {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return pattern(super.prepare(selector, field, arguments), false);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.like(path, e)
+						: cb.like(path, (String) values[0]);
+			}
+		},
+		NOT_LIKE {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return pattern(super.prepare(selector, field, arguments), false);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.notLike(path, e)
+						: cb.notLike(path, (String) values[0]);
+			}
+		},
+		LOWER_EQUAL {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return RsqlCaseInsensitiveHandler.apply(
+						pattern(super.prepare(selector, field, arguments), true), field);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.equal(cb.lower(path), e)
+						: cb.equal(cb.lower(path), values[0]);
+			}
+		},
+		LOWER_LIKE {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return RsqlCaseInsensitiveHandler.apply(
+						pattern(super.prepare(selector, field, arguments), true), field);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.like(cb.lower(path), e)
+						: cb.like(cb.lower(path), (String) values[0]);
+			}
+		},
+		LOWER_NOT_LIKE {
+			@Override
+			public Prepared prepare(String selector, RsqlField field, List<String> arguments) {
+				return RsqlCaseInsensitiveHandler.apply(
+						pattern(super.prepare(selector, field, arguments), true), field);
+			}
+
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.notLike(cb.lower(path), e)
+						: cb.notLike(cb.lower(path), (String) values[0]);
+			}
+		},
+		/**
+		 * The LIKE of an {@code ==} value with {@code *} wildcards, with literal {@code %},
+		 * {@code _} and backslashes escaped.
+		 */
+		WILDCARD_LIKE {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.like(path, e, ESCAPE)
+						: cb.like(path, (String) values[0], ESCAPE);
+			}
+		},
+		WILDCARD_NOT_LIKE {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression e
+						? cb.notLike(path, e, ESCAPE)
+						: cb.notLike(path, (String) values[0], ESCAPE);
+			}
+		},
+		/**
+		 * The half-open range {@code [values[0], values[1])}, the compiled form of a prefix
+		 * pattern.
+		 */
+		RANGE {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression lower
+						? cb.and(
+								cb.greaterThanOrEqualTo(path, lower),
+								cb.lessThan(path, (Expression) values[1]))
+						: cb.and(
+								cb.greaterThanOrEqualTo(path, (Comparable) values[0]),
+								cb.lessThan(path, (Comparable) values[1]));
+			}
+		},
+		NOT_RANGE {
+			@Override
+			public Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values) {
+				return values[0] instanceof Expression lower
+						? cb.or(
+								cb.lessThan(path, lower),
+								cb.greaterThanOrEqualTo(path, (Expression) values[1]))
+						: cb.or(
+								cb.lessThan(path, (Comparable) values[0]),
+								cb.greaterThanOrEqualTo(path, (Comparable) values[1]));
+			}
+		};
+
+		/**
+		 * The escape character of {@link #WILDCARD_LIKE} patterns.
+		 */
+		static final char ESCAPE = '\\';
+
+		@Override
+		public abstract Predicate toPredicate(CriteriaBuilder cb, Path path, Object[] values);
+
+		@Override
+		public java.util.function.Predicate<Object> toMatcher(Object[] values) {
+			return RsqlMatchers.of(this, values);
+		}
+
+		/**
+		 * Switches to the LIKE handler if the converted value contains wildcards.
+		 */
+		private static Prepared wildcard(Prepared prepared, Operation like) {
+			String value = prepared.arguments()[0].toString();
+			if (value.indexOf('*') >= 0) {
+				return new Prepared(like, toLikePattern(value));
+			}
+			return prepared;
+		}
+
+		/**
+		 * Turns {@code *} into {@code %}, escaping the characters LIKE would otherwise treat
+		 * specially.
+		 */
+		static String toLikePattern(String value) {
+			StringBuilder pattern = new StringBuilder(value.length() + 4);
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '*') {
+					pattern.append('%');
+				} else {
+					if (c == '%' || c == '_' || c == ESCAPE) {
+						pattern.append(ESCAPE);
+					}
+					pattern.append(c);
+				}
+			}
+			return pattern.toString();
+		}
+
+		/**
+		 * Uses the string form of the converted value, lower-cased for case-insensitive handlers.
+		 * {@link Locale#ROOT} keeps the result independent of the JVM's default locale, e.g. an
+		 * {@code I} stays {@code i} under a Turkish locale.
+		 */
+		private static Prepared pattern(Prepared prepared, boolean lowerCase) {
+			String value = prepared.arguments()[0].toString();
+			return new Prepared(prepared.handler(), lowerCase ? value.toLowerCase(Locale.ROOT) : value);
+		}
+
+		private static List<String> requireTwo(List<String> arguments, String name) {
+			if (arguments.size() < 2) {
+				throw new IllegalArgumentException(name + " operator requires two arguments");
+			}
+			return arguments.subList(0, 2);
+		}
+
+		private static Predicate between(CriteriaBuilder cb, Path path, Object[] values) {
+			return values[0] instanceof Expression lower
+					? cb.between(path, lower, (Expression) values[1])
+					: cb.between(path, (Comparable) values[0], (Comparable) values[1]);
+		}
+	}
+}
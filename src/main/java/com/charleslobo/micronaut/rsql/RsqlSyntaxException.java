@@ -0,0 +1,39 @@
+package com.charleslobo.micronaut.rsql;
+
+import cz.jirutka.rsql.parser.RSQLParserException;
+
+/**
+ * Thrown by {@link RsqlParser} for malformed RSQL. Extends {@link RSQLParserException} so
+ * callers handle both parsers alike. Invalid input is common on public endpoints, so no
+ * stack trace is captured.
+ */
+public class RsqlSyntaxException extends RSQLParserException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String reason;
+	private final int position;
+
+	public RsqlSyntaxException(String reason, int position) {
+		super(null);
+		this.reason = reason;
+		this.position = position;
+	}
+
+	/**
+	 * The zero-based character offset at which the error was detected.
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public String getMessage() {
+		return reason + " at position " + position;
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
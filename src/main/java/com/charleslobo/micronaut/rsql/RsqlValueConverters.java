@@ -0,0 +1,94 @@
+package com.charleslobo.micronaut.rsql;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZonedDateTime;
+import java.util.function.Function;
+
+/**
+ * Converters from string RSQL arguments to the Java types supported on entity fields.
+ */
+public final class RsqlValueConverters {
+
+	private RsqlValueConverters() {}
+
+	/**
+	 * Returns the converter for the given field type. Unsupported types get a converter that
+	 * throws, so the failure surfaces only when a value actually has to be converted.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static Function<String, Object> forType(Class<?> type) {
+		if (type == String.class) return value -> value;
+		else if (type == Long.class || type == long.class) return Long::valueOf;
+		else if (type == Integer.class || type == int.class) return Integer::valueOf;
+		else if (type == BigDecimal.class) return BigDecimal::new;
+		else if (type == Boolean.class || type == boolean.class) return Boolean::parseBoolean;
+		else if (type == Double.class || type == double.class) return Double::valueOf;
+		else if (type == Float.class || type == float.class) return Float::valueOf;
+		else if (type == Short.class || type == short.class) return Short::valueOf;
+		else if (type == Byte.class || type == byte.class) return Byte::valueOf;
+		else if (type == LocalDate.class) return LocalDate::parse;
+		else if (type == LocalDateTime.class) return LocalDateTime::parse;
+		else if (type == LocalTime.class) return LocalTime::parse;
+		else if (type == Instant.class) return Instant::parse;
+		else if (type == OffsetDateTime.class) return OffsetDateTime::parse;
+		else if (type == ZonedDateTime.class) return ZonedDateTime::parse;
+		else if (type == OffsetTime.class) return OffsetTime::parse;
+		else if (type == java.util.Date.class) return RsqlValueConverters::toDate;
+		else if (type == java.sql.Date.class) return value -> new java.sql.Date(Long.parseLong(value));
+		else if (type == Timestamp.class) return RsqlValueConverters::toTimestamp;
+		else if (type.isEnum()) return value -> Enum.valueOf((Class<Enum>) type, value);
+		else return value -> {
+			throw new IllegalArgumentException("Unsupported type: " + type);
+		};
+	}
+
+	/**
+	 * Formats a value as a string RSQL argument, the inverse of {@link #forType}, without losing
+	 * precision. Timestamps are formatted as ISO-8601 instants, as they carry nanoseconds;
+	 * other dates as epoch milliseconds, and enums by name.
+	 */
+	public static String format(Object value) {
+		if (value instanceof Timestamp timestamp) return timestamp.toInstant().toString();
+		else if (value instanceof java.util.Date date) return Long.toString(date.getTime());
+		else if (value instanceof Enum<?> constant) return constant.name();
+		else return value.toString();
+	}
+
+	/**
+	 * Parses epoch milliseconds or, as providers load timestamp columns of {@code Date} fields
+	 * as {@link Timestamp}s, an ISO-8601 instant, kept as a {@code Timestamp} to retain its
+	 * precision.
+	 */
+	private static java.util.Date toDate(String value) {
+		return isEpochMillis(value) ? new java.util.Date(Long.parseLong(value)) : toTimestamp(value);
+	}
+
+	/**
+	 * Parses an ISO-8601 instant, or epoch milliseconds.
+	 */
+	private static Timestamp toTimestamp(String value) {
+		return isEpochMillis(value)
+				? new Timestamp(Long.parseLong(value))
+				: Timestamp.from(Instant.parse(value));
+	}
+
+	private static boolean isEpochMillis(String value) {
+		int start = value.startsWith("-") ? 1 : 0;
+		if (start == value.length()) {
+			return false;
+		}
+		for (int i = start; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
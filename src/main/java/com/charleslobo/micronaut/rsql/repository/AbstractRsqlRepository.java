@@ -1,18 +1,52 @@
 package com.charleslobo.micronaut.rsql.repository;
 
 import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.RsqlEntityMetadata;
+import com.charleslobo.micronaut.rsql.RsqlField;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation.Stage;
+import com.charleslobo.micronaut.rsql.RsqlParameters;
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan;
+import io.micronaut.data.model.CursoredPage;
+import io.micronaut.data.model.CursoredPageable;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Slice;
+import io.micronaut.data.model.Sort;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.FlushModeType;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class AbstractRsqlRepository<T> implements RsqlRepository<T> {
 
+	private static final ExecutorService COUNT_EXECUTOR =
+			Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rsql-count-", 0).factory());
+
+	private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+	private static final String HINT_READ_ONLY = "org.hibernate.readOnly";
+
 	protected final EntityManager em;
 	protected final RsqlCriteriaBuilder builder;
 	protected final Class<T> entityClass;
@@ -26,57 +60,443 @@ public class AbstractRsqlRepository<T> implements RsqlRepository<T> {
 
 	@Override
 	public List<T> findByRsql(String rsql) {
-		return em.createQuery(builder.fromRsql(rsql, entityClass)).getResultList();
+		return findByRsql(builder.compile(rsql, entityClass));
 	}
 
 	@Override
 	public Page<T> findByRsql(String rsql, Pageable pageable) {
-		CriteriaQuery<T> criteriaQuery = builder.fromRsql(rsql, entityClass);
+		return findByRsql(builder.compile(rsql, entityClass), pageable);
+	}
 
-		// Apply sorting from Pageable
-		if (pageable.isSorted()) {
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			Root<T> root = (Root<T>) criteriaQuery.getRoots().iterator().next();
-			List<jakarta.persistence.criteria.Order> orders = pageable.getSort().getOrderBy().stream()
-				.map(order -> order.isAscending()
-					? cb.asc(root.get(order.getProperty()))
-					: cb.desc(root.get(order.getProperty())))
-				.collect(java.util.stream.Collectors.toList());
-			criteriaQuery.orderBy(orders);
+	@Override
+	public long countByRsql(String rsql) {
+		return countByRsql(builder.compile(rsql, entityClass));
+	}
+
+	@Override
+	public Slice<T> findSliceByRsql(String rsql, Pageable pageable) {
+		return findSliceByRsql(builder.compile(rsql, entityClass), pageable);
+	}
+
+	@Override
+	public Stream<T> streamByRsql(String rsql, int fetchSize) {
+		return streamByRsql(builder.compile(rsql, entityClass), fetchSize);
+	}
+
+	@Override
+	public CursoredPage<T> findByRsqlAfter(String rsql, Sort sort, Pageable.Cursor after, int size) {
+		return findByRsqlAfter(builder.compile(rsql, entityClass), sort, after, size);
+	}
+
+	@Override
+	public List<T> findByRsql(RsqlQueryPlan<T> plan) {
+		if (plan.isUnsatisfiable()) {
+			return List.of();
 		}
+		TypedQuery<T> query = createQuery(plan, Sort.UNSORTED);
+		return observe(Stage.QUERY, plan, query::getResultList);
+	}
 
-		TypedQuery<T> query = em.createQuery(criteriaQuery);
+	@Override
+	public Page<T> findByRsql(RsqlQueryPlan<T> plan, Pageable pageable) {
+		if (plan.isUnsatisfiable()) {
+			return Page.of(List.of(), pageable, 0L);
+		}
+		TypedQuery<T> query = createQuery(plan, pageable.getSort());
+
+		if (pageable.isUnpaged()) {
+			List<T> results = observe(Stage.QUERY, plan, query::getResultList);
+			return Page.of(results, pageable, (long) results.size());
+		}
 
-		query.setFirstResult((int) pageable.getOffset());
+		query.setFirstResult(Math.toIntExact(pageable.getOffset()));
 		query.setMaxResults(pageable.getSize());
 
-		List<T> results = query.getResultList();
+		Future<Long> concurrentTotal = startConcurrentCount(plan);
 
-		CriteriaBuilder cb = em.getCriteriaBuilder();
-		CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
-		Root<T> root = countQuery.from(entityClass);
-		Predicate predicate =
-				builder.buildPredicate(builder.parse(rsql), root, cb, entityClass);
-		countQuery.select(cb.count(root)).where(predicate);
-		Long total = em.createQuery(countQuery).getSingleResult();
+		List<T> results;
+		try {
+			results = observe(Stage.QUERY, plan, query::getResultList);
+		} catch (RuntimeException | Error e) {
+			if (concurrentTotal != null) {
+				concurrentTotal.cancel(false);
+			}
+			throw e;
+		}
+
+		// A short, non-empty page (or a short first page) is the last one, so it tells us the total
+		// and the count query can be skipped
+		long total;
+		if (results.size() < pageable.getSize() && (!results.isEmpty() || pageable.getOffset() == 0)) {
+			total = pageable.getOffset() + results.size();
+			if (concurrentTotal != null) {
+				concurrentTotal.cancel(false);
+			}
+		} else if (concurrentTotal != null) {
+			total = join(concurrentTotal);
+		} else {
+			total = countByRsql(plan);
+		}
 
 		return Page.of(results, pageable, total);
 	}
 
 	@Override
-	public long countByRsql(String rsql) {
+	public Slice<T> findSliceByRsql(RsqlQueryPlan<T> plan, Pageable pageable) {
+		if (plan.isUnsatisfiable()) {
+			return new RsqlSlice<>(List.of(), pageable, false);
+		}
+		TypedQuery<T> query = createQuery(plan, pageable.getSort());
+
+		if (pageable.isUnpaged()) {
+			return new RsqlSlice<>(observe(Stage.QUERY, plan, query::getResultList), pageable, false);
+		}
+
+		query.setFirstResult(Math.toIntExact(pageable.getOffset()));
+		query.setMaxResults(pageable.getSize() + 1);
+
+		List<T> results = observe(Stage.QUERY, plan, query::getResultList);
+		boolean hasNext = results.size() > pageable.getSize();
+		return new RsqlSlice<>(
+				hasNext ? results.subList(0, pageable.getSize()) : results, pageable, hasNext);
+	}
+
+	@Override
+	public Stream<T> streamByRsql(RsqlQueryPlan<T> plan, int fetchSize) {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+		}
+		if (plan.isUnsatisfiable()) {
+			return Stream.empty();
+		}
+		TypedQuery<T> query = createQuery(plan, Sort.UNSORTED);
+		query.setHint(HINT_FETCH_SIZE, fetchSize);
+		query.setHint(HINT_READ_ONLY, true);
+
+		// Detach each batch once the consumer has moved past it, and the last one when the
+		// stream is closed, leaving the rest of the persistence context untouched
+		List<T> batch = new ArrayList<>(fetchSize);
+		Runnable detachBatch = () -> {
+			batch.forEach(em::detach);
+			batch.clear();
+		};
+		return query.getResultStream()
+				.map(entity -> {
+					if (batch.size() == fetchSize) {
+						detachBatch.run();
+					}
+					batch.add(entity);
+					return entity;
+				})
+				.onClose(detachBatch);
+	}
+
+	@Override
+	public long countByRsql(RsqlQueryPlan<T> plan) {
+		if (plan.isUnsatisfiable()) {
+			return 0;
+		}
+		TypedQuery<Long> query = createCountQuery(em, plan);
+		return observe(Stage.COUNT, plan, query::getSingleResult);
+	}
+
+	@Override
+	public CursoredPage<T> findByRsqlAfter(
+			RsqlQueryPlan<T> plan, Sort sort, Pageable.Cursor after, int size) {
+		CursoredPageable pageable =
+				CursoredPageable.from(0, after, Pageable.Mode.CURSOR_NEXT, size, sort, false);
+		if (plan.isUnsatisfiable()) {
+			return CursoredPage.of(List.of(), pageable, List.of(), null);
+		}
+		List<Sort.Order> keys = new ArrayList<>(sort.getOrderBy());
+		String idProperty = getIdProperty();
+		if (keys.stream().noneMatch(order -> order.getProperty().equals(idProperty))) {
+			keys.add(Sort.Order.asc(idProperty));
+		}
+		RsqlEntityMetadata metadata = RsqlEntityMetadata.of(entityClass);
+
+		RsqlParameters parameters = builder.createParameters();
+		CriteriaQuery<T> criteriaQuery = builder.fromRsql(plan, parameters);
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		Root<T> root = rootOf(criteriaQuery);
+
+		if (after != null) {
+			if (after.size() != keys.size()) {
+				throw new IllegalArgumentException(
+						"Cursor has " + after.size() + " values but the sort has " + keys.size() + " keys");
+			}
+			Predicate seek = seekPredicate(cb, root, metadata, keys, after);
+			Predicate filter = criteriaQuery.getRestriction();
+			criteriaQuery.where(filter == null ? seek : cb.and(filter, seek));
+		}
+		criteriaQuery.orderBy(toOrders(cb, root, keys));
+
+		TypedQuery<T> query = parameters.applyTo(em.createQuery(criteriaQuery));
+		query.setMaxResults(size);
+		List<T> results = observe(Stage.QUERY, plan, query::getResultList);
+
+		List<Pageable.Cursor> cursors = new ArrayList<>(results.size());
+		for (T entity : results) {
+			List<Object> values = new ArrayList<>(keys.size());
+			for (Sort.Order key : keys) {
+				Object value = metadata.getField(key.getProperty()).read(entity);
+				if (value == null) {
+					throw new IllegalStateException(
+							"Keyset pagination requires non-null sort keys: " + key.getProperty());
+				}
+				values.add(value);
+			}
+			cursors.add(Pageable.Cursor.of(values));
+		}
+
+		return CursoredPage.of(results, pageable, cursors, null);
+	}
+
+	/**
+	 * Builds {@code (k1 > v1) or (k1 = v1 and k2 > v2) or ...}, with the comparison flipped for
+	 * descending keys, selecting the rows that sort after the cursor.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Predicate seekPredicate(
+			CriteriaBuilder cb,
+			Root<T> root,
+			RsqlEntityMetadata metadata,
+			List<Sort.Order> keys,
+			Pageable.Cursor after) {
+		Predicate[] alternatives = new Predicate[keys.size()];
+		Predicate[] equalities = new Predicate[keys.size()];
+		for (int i = 0; i < keys.size(); i++) {
+			Sort.Order key = keys.get(i);
+			RsqlField field = metadata.getField(key.getProperty());
+			Object value = after.get(i);
+			if (value instanceof String string && field.getType() != String.class) {
+				value = field.convert(string);
+			}
+			Path path = root.get(key.getProperty());
+			Predicate beyond =
+					key.isAscending()
+							? cb.greaterThan(path, (Comparable) value)
+							: cb.lessThan(path, (Comparable) value);
+			Predicate[] conjuncts = Arrays.copyOf(equalities, i + 1);
+			conjuncts[i] = beyond;
+			alternatives[i] = i == 0 ? beyond : cb.and(conjuncts);
+			equalities[i] = cb.equal(path, value);
+		}
+		return cb.or(alternatives);
+	}
+
+	/**
+	 * Returns the name of the entity's id attribute, used as the keyset pagination tiebreaker.
+	 */
+	protected String getIdProperty() {
+		EntityType<T> entityType = em.getMetamodel().entity(entityClass);
+		return entityType.getSingularAttributes().stream()
+				.filter(SingularAttribute::isId)
+				.map(SingularAttribute::getName)
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException("No id attribute on " + entityClass.getName()));
+	}
+
+	/**
+	 * Starts counting alongside the page query, if concurrent counts are enabled, the caller is
+	 * not inside a transaction and one of the builder's count permits is free. Returns
+	 * {@code null} otherwise, and the count then runs after the page query on this repository's
+	 * EntityManager. A caller's transaction is left alone because the count's own EntityManager
+	 * could not see its uncommitted writes.
+	 */
+	private Future<Long> startConcurrentCount(RsqlQueryPlan<T> plan) {
+		if (!builder.getConfiguration().isConcurrentCount() || em.isJoinedToTransaction()) {
+			return null;
+		}
+		Semaphore permits = builder.getCountPermits();
+		if (!permits.tryAcquire()) {
+			return null;
+		}
+		CountTask task = new CountTask(() -> countInReadOnlyTransaction(plan), permits);
+		try {
+			COUNT_EXECUTOR.execute(builder.getInstrumentation().wrap(task));
+		} catch (RuntimeException e) {
+			task.cancel(false);
+			throw e;
+		}
+		return task;
+	}
+
+	/**
+	 * Counts on a separate EntityManager, and so a separate connection, inside a read-only
+	 * transaction that is always rolled back. Used to run the count alongside the page query.
+	 * The transaction is resource-local; under JTA {@code getTransaction()} throws.
+	 */
+	private long countInReadOnlyTransaction(RsqlQueryPlan<T> plan) {
+		EntityManager countEm = em.getEntityManagerFactory().createEntityManager();
+		try {
+			countEm.setFlushMode(FlushModeType.COMMIT);
+			EntityTransaction transaction = countEm.getTransaction();
+			transaction.begin();
+			try {
+				markReadOnly(countEm);
+				TypedQuery<Long> query = createCountQuery(countEm, plan);
+				query.setHint(HINT_READ_ONLY, true);
+				return observe(Stage.COUNT, plan, query::getSingleResult);
+			} finally {
+				transaction.rollback();
+			}
+		} finally {
+			countEm.close();
+		}
+	}
+
+	/**
+	 * Marks the transaction of a concurrent count read-only, right after it begins. JPA has no
+	 * portable way to do so for the connection; the default marks the session read-only with
+	 * Hibernate's {@code org.hibernate.readOnly} property, which other providers ignore.
+	 * Override to also mark the JDBC connection, e.g. through Hibernate's
+	 * {@code Session.doWork}, where the driver routes read-only connections to a replica.
+	 */
+	protected void markReadOnly(EntityManager countEm) {
+		countEm.setProperty(HINT_READ_ONLY, true);
+	}
+
+	private static long join(Future<Long> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for the count");
+		}
+	}
+
+	/**
+	 * A concurrent count holding one of the builder's count permits. It is cancelled without
+	 * interrupting, as an interrupt during JDBC I/O on a virtual thread closes the socket and
+	 * with it the pooled connection; a count already running finishes in the background and
+	 * its result is discarded, while one cancelled before it starts never opens a connection.
+	 * The permit is released when the count ends, or on cancellation if it never started.
+	 */
+	private static final class CountTask extends FutureTask<Long> {
+
+		private final Semaphore permits;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		CountTask(Callable<Long> count, Semaphore permits) {
+			super(count);
+			this.permits = permits;
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				super.run();
+			} finally {
+				release();
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled() && started.compareAndSet(false, true)) {
+				release();
+			}
+		}
+
+		private void release() {
+			if (released.compareAndSet(false, true)) {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Runs a query as an instrumented stage, tagged with the plan's fingerprint and annotated
+	 * with the number of rows returned or counted.
+	 */
+	private <R> R observe(Stage stage, RsqlQueryPlan<T> plan, Supplier<R> query) {
+		RsqlInstrumentation instrumentation = builder.getInstrumentation();
+		if (instrumentation == RsqlInstrumentation.NOOP) {
+			return query.get();
+		}
+		String fingerprint = plan.getFingerprint();
+		RsqlInstrumentation.Observation observation =
+				instrumentation.start(stage, entityClass, fingerprint);
+		R result;
+		try {
+			result = query.get();
+		} catch (RuntimeException | Error e) {
+			observation.stop(fingerprint, e);
+			throw e;
+		}
+		if (result instanceof List<?> rows) {
+			observation.annotate(RsqlInstrumentation.Attribute.RESULTS, rows.size());
+		} else if (result instanceof Number count) {
+			observation.annotate(RsqlInstrumentation.Attribute.RESULTS, count.longValue());
+		}
+		observation.stop(fingerprint, null);
+		return result;
+	}
+
+	/**
+	 * Creates the data query for a plan, with sorting applied and parameters bound.
+	 */
+	protected TypedQuery<T> createQuery(RsqlQueryPlan<T> plan, Sort sort) {
+		RsqlParameters parameters = builder.createParameters();
+		CriteriaQuery<T> criteriaQuery = builder.fromRsql(plan, parameters);
+
+		// Apply sorting
+		if (sort.isSorted()) {
+			CriteriaBuilder cb = em.getCriteriaBuilder();
+			Root<T> root = rootOf(criteriaQuery);
+			criteriaQuery.orderBy(toOrders(cb, root, sort.getOrderBy()));
+		}
+
+		return parameters.applyTo(em.createQuery(criteriaQuery));
+	}
+
+	/**
+	 * Returns the entity root of a query built by {@link RsqlCriteriaBuilder#fromRsql}, which
+	 * always selects from a single root of the entity type.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Root<T> rootOf(CriteriaQuery<T> criteriaQuery) {
+		return (Root<T>) criteriaQuery.getRoots().iterator().next();
+	}
+
+	private List<jakarta.persistence.criteria.Order> toOrders(
+			CriteriaBuilder cb, Root<T> root, List<Sort.Order> orderBy) {
+		return orderBy.stream()
+			.map(order -> order.isAscending()
+				? cb.asc(root.get(order.getProperty()))
+				: cb.desc(root.get(order.getProperty())))
+			.collect(java.util.stream.Collectors.toList());
+	}
+
+	/**
+	 * Creates the count query for a plan on the given EntityManager, with parameters bound.
+	 */
+	protected TypedQuery<Long> createCountQuery(EntityManager em, RsqlQueryPlan<T> plan) {
 		CriteriaBuilder cb = em.getCriteriaBuilder();
 		CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
 		Root<T> root = countQuery.from(entityClass);
 
 		countQuery.select(cb.count(root));
 
-		if (rsql != null && !rsql.isBlank()) {
-			Predicate predicate =
-					builder.buildPredicate(builder.parse(rsql), root, cb, entityClass);
-			countQuery.where(predicate);
+		RsqlParameters parameters = builder.createParameters();
+		if (plan.hasFilter()) {
+			countQuery.where(builder.buildPredicate(plan, root, cb, parameters));
 		}
 
-		return em.createQuery(countQuery).getSingleResult();
+		return parameters.applyTo(em.createQuery(countQuery));
 	}
 }
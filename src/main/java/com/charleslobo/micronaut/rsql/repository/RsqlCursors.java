@@ -0,0 +1,50 @@
+package com.charleslobo.micronaut.rsql.repository;
+
+import com.charleslobo.micronaut.rsql.RsqlValueConverters;
+import io.micronaut.data.model.Pageable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes keyset pagination cursors as opaque URL-safe strings, for handing to API clients.
+ * Decoded cursors hold the values as strings; the repository converts them back to the sort
+ * key types when seeking.
+ */
+public final class RsqlCursors {
+
+	private RsqlCursors() {}
+
+	public static String encode(Pageable.Cursor cursor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(cursor.size());
+			for (Object element : cursor.elements()) {
+				out.writeUTF(RsqlValueConverters.format(element));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	public static Pageable.Cursor decode(String encoded) {
+		try (DataInputStream in =
+				new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(encoded)))) {
+			int size = in.readUnsignedByte();
+			List<Object> elements = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				elements.add(in.readUTF());
+			}
+			return Pageable.Cursor.of(elements);
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package com.charleslobo.micronaut.rsql.repository;
 
+import com.charleslobo.micronaut.rsql.RsqlQueryPlan;
+import io.micronaut.data.model.CursoredPage;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Slice;
+import io.micronaut.data.model.Sort;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface RsqlRepository<T> {
 	List<T> findByRsql(String rsql);
@@ -10,4 +15,40 @@ public interface RsqlRepository<T> {
 	Page<T> findByRsql(String rsql, Pageable pageable);
 
 	long countByRsql(String rsql);
+
+	/**
+	 * Returns one slice of the results without running a count query. One extra row is
+	 * fetched to determine {@link Slice#hasNext()}.
+	 */
+	Slice<T> findSliceByRsql(String rsql, Pageable pageable);
+
+	List<T> findByRsql(RsqlQueryPlan<T> plan);
+
+	Page<T> findByRsql(RsqlQueryPlan<T> plan, Pageable pageable);
+
+	long countByRsql(RsqlQueryPlan<T> plan);
+
+	Slice<T> findSliceByRsql(RsqlQueryPlan<T> plan, Pageable pageable);
+
+	/**
+	 * Streams the results from a database cursor instead of loading them all into memory.
+	 * Rows are fetched {@code fetchSize} at a time, loaded read-only, and detached from the
+	 * persistence context once the next batch is reached, or the stream is closed, so memory
+	 * stays flat regardless of the number of results. The stream must be consumed sequentially
+	 * and closed while the EntityManager is still open, as it holds an open result set.
+	 */
+	Stream<T> streamByRsql(String rsql, int fetchSize);
+
+	Stream<T> streamByRsql(RsqlQueryPlan<T> plan, int fetchSize);
+
+	/**
+	 * Keyset (seek) pagination: returns up to {@code size} entities ordered by {@code sort} plus
+	 * the entity id as a tiebreaker, starting after the given cursor ({@code null} for the first
+	 * page). Each returned entity has a cursor; pass the last one to fetch the next page.
+	 * Sort keys must not be null.
+	 */
+	CursoredPage<T> findByRsqlAfter(String rsql, Sort sort, Pageable.Cursor after, int size);
+
+	CursoredPage<T> findByRsqlAfter(
+			RsqlQueryPlan<T> plan, Sort sort, Pageable.Cursor after, int size);
 }
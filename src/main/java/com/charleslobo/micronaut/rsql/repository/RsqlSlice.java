@@ -0,0 +1,27 @@
+package com.charleslobo.micronaut.rsql.repository;
+
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Slice;
+import java.util.List;
+
+/**
+ * A Slice that knows whether a next slice exists, because one row more than the slice size
+ * was fetched. The default {@link Slice#hasNext()} only guesses from a full slice.
+ */
+record RsqlSlice<T>(List<T> content, Pageable pageable, boolean hasNext) implements Slice<T> {
+
+	@Override
+	public List<T> getContent() {
+		return content;
+	}
+
+	@Override
+	public Pageable getPageable() {
+		return pageable;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return hasNext;
+	}
+}
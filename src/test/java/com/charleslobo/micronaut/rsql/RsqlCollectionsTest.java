@@ -0,0 +1,91 @@
+package com.charleslobo.micronaut.rsql;
+
+import org.junit.Before;
+import org.junit.Test;
+import jakarta.persistence.EntityManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RsqlCollectionsTest {
+
+    private RsqlCriteriaBuilder builder;
+    private List<Item> items;
+
+    @Before
+    public void setUp() {
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class));
+        items = IntStream.range(0, 50_000)
+                .mapToObj(i -> new Item(i, i % 3 == 0 ? "fizz" : "item-" + i))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testParallelFilterPreservesOrder() {
+        RsqlCollections collections = new RsqlCollections(builder, 1000, ForkJoinPool.commonPool());
+        List<Item> result = collections.filter(items, "name==fizz;id=lt=30000", Item.class);
+        assertEquals(10_000, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(i * 3, (int) result.get(i).id);
+        }
+        assertEquals(10_000, collections.count(items, "name==fizz;id=lt=30000", Item.class));
+    }
+
+    @Test
+    public void testUnorderedFilterReturnsSameElements() {
+        RsqlCollections collections = new RsqlCollections(builder, 1000, new ForkJoinPool(2));
+        List<Item> unordered = collections.filter(items, "name==item-1*", Item.class, false);
+        List<Item> sequential = new RsqlCollections(builder, 0, ForkJoinPool.commonPool())
+                .filter(items, "name==item-1*", Item.class, false);
+        assertEquals(sequential.size(), unordered.size());
+        assertEquals(new HashSet<>(sequential), new HashSet<>(unordered));
+    }
+
+    @Test
+    public void testSmallCollectionsAndBlankFilters() {
+        RsqlCollections collections = new RsqlCollections(builder);
+        List<Item> small = items.subList(0, 10);
+        assertEquals(List.of(small.get(3), small.get(6), small.get(9)),
+                collections.filter(small, "name==fizz;id=gt=0", Item.class));
+        List<Item> all = collections.filter(small, "", Item.class);
+        assertEquals(small, all);
+        all.clear();
+        assertEquals(10, small.size());
+        assertEquals(50_000, collections.count(items, " ", Item.class));
+    }
+
+    @Test
+    public void testUnsatisfiableFilterMatchesNothing() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        RsqlCollections collections = new RsqlCollections(
+                new RsqlCriteriaBuilder(mock(EntityManager.class), configuration));
+        assertEquals(new ArrayList<>(), collections.filter(items, "id==1;id==2", Item.class));
+        assertEquals(0, collections.count(items, "id==1;id==2", Item.class));
+    }
+
+    public static class Item {
+        private Integer id;
+        private String name;
+
+        public Item(Integer id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -4,14 +4,35 @@ import org.junit.Test;
 import org.junit.Before;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import jakarta.persistence.Column;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.ParameterExpression;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Root;
 import jakarta.persistence.criteria.Predicate;
 import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.AndNode;
 import cz.jirutka.rsql.parser.ast.ComparisonNode;
 import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -140,10 +161,8 @@ public class RsqlCriteriaBuilderTest {
         // Test that modified=gt=1761887581946 works with Date fields
         String rsql = "modified=gt=1761887581946";
 
-        CriteriaQuery<DateTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(DateTestEntity.class)).thenReturn(query);
-        when(query.from(DateTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.<java.util.Date>greaterThan(any(), any(java.util.Date.class))).thenReturn(mock(Predicate.class));
+        CriteriaQuery<DateTestEntity> query = mockQuery(DateTestEntity.class);
+        when(criteriaBuilder.<Date>greaterThan(any(), any(Date.class))).thenReturn(mock(Predicate.class));
 
         try {
             rsqlCriteriaBuilder.fromRsql(rsql, DateTestEntity.class);
@@ -159,10 +178,8 @@ public class RsqlCriteriaBuilderTest {
         // Test that modified=lt=1761887581946 works with Date fields
         String rsql = "modified=lt=1761887581946";
 
-        CriteriaQuery<DateTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(DateTestEntity.class)).thenReturn(query);
-        when(query.from(DateTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.<java.util.Date>lessThan(any(), any(java.util.Date.class))).thenReturn(mock(Predicate.class));
+        CriteriaQuery<DateTestEntity> query = mockQuery(DateTestEntity.class);
+        when(criteriaBuilder.<Date>lessThan(any(), any(Date.class))).thenReturn(mock(Predicate.class));
 
         try {
             rsqlCriteriaBuilder.fromRsql(rsql, DateTestEntity.class);
@@ -177,10 +194,8 @@ public class RsqlCriteriaBuilderTest {
         // Test that modified=ge=1761887581946 works with Date fields
         String rsql = "modified=ge=1761887581946";
 
-        CriteriaQuery<DateTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(DateTestEntity.class)).thenReturn(query);
-        when(query.from(DateTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.<java.util.Date>greaterThanOrEqualTo(any(), any(java.util.Date.class))).thenReturn(mock(Predicate.class));
+        CriteriaQuery<DateTestEntity> query = mockQuery(DateTestEntity.class);
+        when(criteriaBuilder.<Date>greaterThanOrEqualTo(any(), any(Date.class))).thenReturn(mock(Predicate.class));
 
         try {
             rsqlCriteriaBuilder.fromRsql(rsql, DateTestEntity.class);
@@ -192,13 +207,11 @@ public class RsqlCriteriaBuilderTest {
 
     @Test
     public void testTimestampComparison() {
-        // Test that java.sql.Timestamp fields work too
+        // Test that Timestamp fields work too
         String rsql = "created=gt=1761887581946";
 
-        CriteriaQuery<TimestampTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TimestampTestEntity.class)).thenReturn(query);
-        when(query.from(TimestampTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.<java.sql.Timestamp>greaterThan(any(), any(java.sql.Timestamp.class))).thenReturn(mock(Predicate.class));
+        CriteriaQuery<TimestampTestEntity> query = mockQuery(TimestampTestEntity.class);
+        when(criteriaBuilder.<Timestamp>greaterThan(any(), any(Timestamp.class))).thenReturn(mock(Predicate.class));
 
         try {
             rsqlCriteriaBuilder.fromRsql(rsql, TimestampTestEntity.class);
@@ -213,9 +226,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =isnull= operator
         String rsql = "linkedin=isnull=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -231,9 +242,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =null= operator (alias for =isnull=)
         String rsql = "linkedin=null=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -249,9 +258,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =na= operator (alias for =isnull=)
         String rsql = "linkedin=na=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -267,9 +274,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =isnotnull= operator
         String rsql = "linkedin=isnotnull=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNotNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -285,9 +290,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =notnull= operator (alias for =isnotnull=)
         String rsql = "linkedin=notnull=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNotNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -303,9 +306,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =nn= operator (alias for =isnotnull=)
         String rsql = "linkedin=nn=true";
 
-        CriteriaQuery<TestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(query);
-        when(query.from(TestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<TestEntity> query = mockQuery(TestEntity.class);
         when(criteriaBuilder.isNotNull(any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -321,9 +322,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =bt= operator for between
         String rsql = "age=bt=(18,65)";
 
-        CriteriaQuery<AgeTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(AgeTestEntity.class)).thenReturn(query);
-        when(query.from(AgeTestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<AgeTestEntity> query = mockQuery(AgeTestEntity.class);
         when(criteriaBuilder.between(any(), any(Comparable.class), any(Comparable.class))).thenReturn(mock(Predicate.class));
 
         try {
@@ -339,9 +338,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =nb= operator for not between
         String rsql = "age=nb=(18,65)";
 
-        CriteriaQuery<AgeTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(AgeTestEntity.class)).thenReturn(query);
-        when(query.from(AgeTestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<AgeTestEntity> query = mockQuery(AgeTestEntity.class);
         when(criteriaBuilder.between(any(), any(Comparable.class), any(Comparable.class))).thenReturn(mock(Predicate.class));
         when(criteriaBuilder.not(any(Predicate.class))).thenReturn(mock(Predicate.class));
 
@@ -358,10 +355,8 @@ public class RsqlCriteriaBuilderTest {
         // Test =ilike= operator for case-insensitive LIKE
         String rsql = "name=ilike=*john*";
 
-        CriteriaQuery<NameTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(NameTestEntity.class)).thenReturn(query);
-        when(query.from(NameTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.lower(any())).thenReturn(mock(jakarta.persistence.criteria.Expression.class));
+        CriteriaQuery<NameTestEntity> query = mockQuery(NameTestEntity.class);
+        when(criteriaBuilder.lower(any())).thenReturn(mock(Expression.class));
         when(criteriaBuilder.like(any(), anyString())).thenReturn(mock(Predicate.class));
 
         try {
@@ -377,10 +372,8 @@ public class RsqlCriteriaBuilderTest {
         // Test =icase= operator for case-insensitive equal
         String rsql = "name=icase=JOHN";
 
-        CriteriaQuery<NameTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(NameTestEntity.class)).thenReturn(query);
-        when(query.from(NameTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.lower(any())).thenReturn(mock(jakarta.persistence.criteria.Expression.class));
+        CriteriaQuery<NameTestEntity> query = mockQuery(NameTestEntity.class);
+        when(criteriaBuilder.lower(any())).thenReturn(mock(Expression.class));
         when(criteriaBuilder.equal(any(), any())).thenReturn(mock(Predicate.class));
 
         try {
@@ -396,9 +389,7 @@ public class RsqlCriteriaBuilderTest {
         // Test =notlike= operator for NOT LIKE
         String rsql = "name=notlike=*spam*";
 
-        CriteriaQuery<NameTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(NameTestEntity.class)).thenReturn(query);
-        when(query.from(NameTestEntity.class)).thenReturn((Root) root);
+        CriteriaQuery<NameTestEntity> query = mockQuery(NameTestEntity.class);
         when(criteriaBuilder.notLike(any(), anyString())).thenReturn(mock(Predicate.class));
 
         try {
@@ -414,10 +405,8 @@ public class RsqlCriteriaBuilderTest {
         // Test =inotlike= operator for case-insensitive NOT LIKE
         String rsql = "name=inotlike=*SPAM*";
 
-        CriteriaQuery<NameTestEntity> query = mock(CriteriaQuery.class);
-        when(criteriaBuilder.createQuery(NameTestEntity.class)).thenReturn(query);
-        when(query.from(NameTestEntity.class)).thenReturn((Root) root);
-        when(criteriaBuilder.lower(any())).thenReturn(mock(jakarta.persistence.criteria.Expression.class));
+        CriteriaQuery<NameTestEntity> query = mockQuery(NameTestEntity.class);
+        when(criteriaBuilder.lower(any())).thenReturn(mock(Expression.class));
         when(criteriaBuilder.notLike(any(), anyString())).thenReturn(mock(Predicate.class));
 
         try {
@@ -428,6 +417,687 @@ public class RsqlCriteriaBuilderTest {
         }
     }
 
+    @Test
+    public void testParseCacheReturnsSameNode() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParseCacheSize(10);
+        RsqlCriteriaBuilder cachingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        Node first = cachingBuilder.parse("name==john;age=gt=18");
+        Node second = cachingBuilder.parse("name==john;age=gt=18");
+
+        assertSame(first, second);
+        assertEquals(1, cachingBuilder.getParseCache().getHitCount());
+        assertEquals(1, cachingBuilder.getParseCache().getMissCount());
+    }
+
+    @Test
+    public void testParseCacheDisabledByDefault() {
+        Node first = rsqlCriteriaBuilder.parse("name==john");
+        Node second = rsqlCriteriaBuilder.parse("name==john");
+
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(0, rsqlCriteriaBuilder.getParseCache().size());
+    }
+
+    @Test
+    public void testParseCacheEvictsBeyondMaximumSize() {
+        RsqlCache<String, String> cache = new RsqlCache<>(4);
+        for (int i = 0; i < 20; i++) {
+            cache.get("key" + i, key -> key.toUpperCase());
+        }
+
+        assertTrue("Cache should stay bounded", cache.size() <= 4);
+        assertEquals(16, cache.getEvictionCount());
+        assertEquals("KEY19", cache.get("key19", key -> "reloaded"));
+    }
+
+    @Test
+    public void testCacheEvictsInClockOrder() {
+        // Hash order 10, 20, 30; insertion order 30, 20, 10
+        RsqlCache<Integer, Integer> cache = new RsqlCache<>(3);
+        cache.get(30, key -> key);
+        cache.get(20, key -> key);
+        cache.get(10, key -> key);
+        cache.get(10, key -> key);
+
+        cache.get(40, key -> key);
+        cache.get(50, key -> key);
+
+        // Unused entries go first, in the order they were added, while 10 gets a second chance
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(Integer.valueOf(10), cache.get(10, key -> -1));
+        assertEquals(Integer.valueOf(-1), cache.get(30, key -> -1));
+    }
+
+    @Test
+    public void testParseRejectsNullBeforeCache() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParseCacheSize(10);
+        RsqlCriteriaBuilder cachingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> cachingBuilder.parse(null));
+        assertEquals("query must not be null", error.getMessage());
+    }
+
+    @Test
+    public void testEntityMetadataResolvesInheritedFields() {
+        RsqlEntityMetadata metadata = RsqlEntityMetadata.of(InheritedTestEntity.class);
+
+        assertSame(metadata, RsqlEntityMetadata.of(InheritedTestEntity.class));
+        assertEquals(Integer.class, metadata.getField("age").getType());
+        assertEquals(String.class, metadata.getField("nickname").getType());
+        assertEquals(42, metadata.getField("age").convert("42"));
+        assertNull(metadata.findField("unknown"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEntityMetadataRejectsUnknownField() {
+        RsqlEntityMetadata.of(AgeTestEntity.class).getField("unknown");
+    }
+
+    @Test
+    public void testCompileBlankRsqlHasNoFilter() {
+        RsqlQueryPlan<AgeTestEntity> plan = rsqlCriteriaBuilder.compile("  ", AgeTestEntity.class);
+
+        assertFalse(plan.hasFilter());
+        assertNull(plan.getNode());
+        assertNull(plan.toPredicate(null, criteriaBuilder));
+    }
+
+    @Test
+    public void testCompiledPlanIsReusedAcrossQueries() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setPlanCacheSize(10);
+        RsqlCriteriaBuilder cachingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        RsqlQueryPlan<AgeTestEntity> plan = cachingBuilder.compile("age=bt=(18,65)", AgeTestEntity.class);
+        assertSame(plan, cachingBuilder.compile("age=bt=(18,65)", AgeTestEntity.class));
+
+        when(root.get("age")).thenReturn(mock(Path.class));
+        Predicate between = mock(Predicate.class);
+        when(criteriaBuilder.between(any(), eq(18), eq(65))).thenReturn(between);
+
+        assertSame(between, plan.toPredicate((Root) root, criteriaBuilder));
+        assertSame(between, plan.toPredicate((Root) root, criteriaBuilder));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileRejectsUnknownField() {
+        rsqlCriteriaBuilder.compile("unknown==1", AgeTestEntity.class);
+    }
+
+    @Test
+    public void testParameterizedQueryBindsArguments() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParameterizedQueries(true);
+        RsqlCriteriaBuilder parameterizedBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        ParameterExpression lower = mock(ParameterExpression.class);
+        ParameterExpression upper = mock(ParameterExpression.class);
+        when(criteriaBuilder.parameter(Integer.class)).thenReturn(lower, upper);
+        when(root.get("age")).thenReturn(mock(Path.class));
+
+        RsqlQueryPlan<AgeTestEntity> plan = parameterizedBuilder.compile("age=bt=(18,65)", AgeTestEntity.class);
+        RsqlParameters parameters = parameterizedBuilder.createParameters();
+        plan.toPredicate((Root) root, criteriaBuilder, parameters);
+
+        verify(criteriaBuilder).between(any(), eq(lower), eq(upper));
+        assertEquals(2, parameters.size());
+
+        TypedQuery<?> query = mock(TypedQuery.class);
+        parameters.applyTo(query);
+        verify(query).setParameter(lower, 18);
+        verify(query).setParameter(upper, 65);
+    }
+
+    @Test
+    public void testCustomOperatorHandler() {
+        ComparisonOperator mod = new ComparisonOperator("=mod=", true);
+        Predicate modPredicate = mock(Predicate.class);
+        Path agePath = mockPath("age");
+        List<Object> received = new ArrayList<>();
+        RsqlCriteriaBuilder customBuilder = new RsqlCriteriaBuilder(
+                entityManager, new RsqlConfiguration(), Map.of(mod, (cb, path, arguments) -> {
+                    assertSame(agePath, path);
+                    received.addAll(Arrays.asList(arguments));
+                    return modPredicate;
+                }));
+
+        RsqlQueryPlan<AgeTestEntity> plan = customBuilder.compile("age=mod=(2,0)", AgeTestEntity.class);
+
+        assertSame(modPredicate, plan.toPredicate((Root) root, criteriaBuilder));
+        // Arguments arrive converted to the field type
+        assertEquals(List.of(2, 0), received);
+    }
+
+    @Test
+    public void testCustomOperatorReplacesBuiltIn() {
+        Predicate customPredicate = mock(Predicate.class);
+        when(root.get("age")).thenReturn(mock(Path.class));
+        RsqlCriteriaBuilder customBuilder = new RsqlCriteriaBuilder(
+                entityManager,
+                new RsqlConfiguration(),
+                Map.of(new ComparisonOperator("=bt=", true), (cb, path, arguments) -> customPredicate));
+
+        RsqlQueryPlan<AgeTestEntity> plan = customBuilder.compile("age=bt=(18,65)", AgeTestEntity.class);
+
+        assertSame(customPredicate, plan.toPredicate((Root) root, criteriaBuilder));
+        verify(criteriaBuilder, never()).between(any(), any(Comparable.class), any(Comparable.class));
+    }
+
+    @Test
+    public void testBetweenRequiresTwoArguments() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> rsqlCriteriaBuilder.compile("age=nb=18", AgeTestEntity.class));
+
+        assertEquals("Not between operator requires two arguments", error.getMessage());
+    }
+
+    @Test
+    public void testOptimizerMergesEqualityDisjunctionsIntoIn() {
+        assertOptimized("nickname=in=(a,b,c);age==1", "(nickname==a,nickname==b,nickname=in=(c,a));age==1");
+        assertOptimized("nickname==a*,nickname==b", "nickname==a*,nickname==b");
+    }
+
+    @Test
+    public void testOptimizerTightensRanges() {
+        assertOptimized("age=bt=(21,65)", "age=ge=18;age=le=65;age=ge=21");
+        assertOptimized("age=gt=21;age=le=30;nickname==a", "age=ge=21;(age=gt=21;nickname==a);age=bt=(10,30)");
+        assertOptimized("age=lt=9", "age=lt=10;age=lt=9;age=le=9");
+    }
+
+    @Test
+    public void testOptimizerFlattensAndRemovesDuplicates() {
+        assertOptimized("nickname==a;age==1", "(nickname==a;age==1);nickname==a");
+        assertOptimized("nickname==a", "nickname==a,nickname==a");
+    }
+
+    @Test
+    public void testOptimizedFilterIsCompiled() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        RsqlCriteriaBuilder optimizingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+        Path agePath = mockPath("age");
+
+        optimizingBuilder.compile("age=ge=18;age=le=65", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(criteriaBuilder).between(agePath, 18, 65);
+        verify(criteriaBuilder, never()).and(any(Predicate[].class));
+    }
+
+    @Test
+    public void testOptimizerDetectsContradictions() {
+        assertEquals(RsqlOptimizer.NEVER, optimize("age==5;age==6"));
+        assertEquals(RsqlOptimizer.NEVER, optimize("age=in=(1,2);age=in=(3,4);nickname==a"));
+        assertEquals(RsqlOptimizer.NEVER, optimize("age=gt=10;age=lt=5"));
+        assertEquals(RsqlOptimizer.NEVER, optimize("age=gt=5;age=le=5"));
+        assertEquals(RsqlOptimizer.NEVER, optimize("age=bt=(10,5)"));
+        assertEquals(RsqlOptimizer.NEVER, optimize("nickname=isnull=true;nickname=isnotnull=true"));
+        // A contradiction in an OR branch only removes that branch
+        assertOptimized("nickname==a", "nickname==a,(age==5;age==6)");
+        assertOptimized("age==5;age=in=(5,6)", "age==5;age=in=(5,6)");
+    }
+
+    @Test
+    public void testOptimizerComparesNumbersAsTheDatabase() {
+        assertNotEquals(RsqlOptimizer.NEVER, optimize("price==1.0;price==1.00", PriceTestEntity.class));
+        assertNotEquals(RsqlOptimizer.NEVER, optimize("price=in=(1.0,2);price==1.00", PriceTestEntity.class));
+        assertEquals(rsqlCriteriaBuilder.parse("price=bt=(1.0,1.00)"),
+                optimize("price=ge=1.0;price=le=1.00", PriceTestEntity.class));
+        assertEquals(RsqlOptimizer.NEVER, optimize("price=gt=1.0;price=le=1.00", PriceTestEntity.class));
+        assertNotEquals(RsqlOptimizer.NEVER, optimize("ratio=ge=0.0;ratio=le=-0.0", PriceTestEntity.class));
+    }
+
+    @Test
+    public void testOptimizerNeverFoldsStringOrEnumFilters() {
+        Node stringRange = rsqlCriteriaBuilder.parse("name=gt=a;name=lt=B");
+        Node enumRange = rsqlCriteriaBuilder.parse("status=gt=OPEN;status=lt=CLOSED");
+
+        assertEquals(stringRange, rsqlCriteriaBuilder.optimize(stringRange, PriceTestEntity.class));
+        assertEquals(enumRange, rsqlCriteriaBuilder.optimize(enumRange, PriceTestEntity.class));
+        assertNotEquals(RsqlOptimizer.NEVER, optimize("name==a;name==A", PriceTestEntity.class));
+        assertNotEquals(RsqlOptimizer.NEVER, optimize("status==OPEN;status==CLOSED", PriceTestEntity.class));
+    }
+
+    @Test
+    public void testOptimizerKeepsEqualitiesWhenInIsCustom() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        RsqlCriteriaBuilder customBuilder = new RsqlCriteriaBuilder(entityManager, configuration,
+                Map.of(new ComparisonOperator("=in=", true), (cb, path, arguments) -> mock(Predicate.class)));
+
+        Node node = customBuilder.parse("age==1,age==2");
+
+        assertEquals(node, customBuilder.optimize(node, AgeTestEntity.class));
+    }
+
+    @Test
+    public void testOptimizerHandlesDeepNesting() {
+        Node node = new ComparisonNode(RSQLOperators.EQUAL, "age", List.of("0"));
+        for (int i = 1; i <= 20_000; i++) {
+            ComparisonNode comparison = new ComparisonNode(
+                    RSQLOperators.EQUAL, "age", List.of(Integer.toString(i)));
+            node = i % 2 == 0
+                    ? new AndNode(List.of(comparison, node))
+                    : new OrNode(List.of(comparison, node));
+        }
+
+        Node optimized = rsqlCriteriaBuilder.optimize(node, AgeTestEntity.class);
+
+        assertTrue(optimized instanceof OrNode);
+    }
+
+    @Test
+    public void testOptimizerDropsTautologies() {
+        assertEquals(RsqlOptimizer.ALWAYS, optimize("nickname=isnull=true,nickname=isnotnull=true"));
+        assertOptimized("age==1", "age==1;(nickname=isnull=true,nickname=isnotnull=true)");
+    }
+
+    @Test
+    public void testContradictionCompilesToUnsatisfiablePlan() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        RsqlCriteriaBuilder optimizingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        RsqlQueryPlan<AgeTestEntity> never = optimizingBuilder.compile("age==5;age==6", AgeTestEntity.class);
+        RsqlQueryPlan<AgeTestEntity> always =
+                optimizingBuilder.compile("age=isnull=true,age=isnotnull=true", AgeTestEntity.class);
+
+        assertTrue(never.isUnsatisfiable());
+        assertTrue(never.hasFilter());
+        never.toPredicate((Root) root, criteriaBuilder);
+        verify(criteriaBuilder).or(new Predicate[0]);
+        assertFalse(always.isUnsatisfiable());
+        assertFalse(always.hasFilter());
+        assertFalse(rsqlCriteriaBuilder.compile("age==5;age==6", AgeTestEntity.class).isUnsatisfiable());
+    }
+
+    @Test
+    public void testComplexityLimitsRejectFilters() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setMaxDepth(3);
+        configuration.setMaxComparisons(4);
+        configuration.setMaxArguments(3);
+        configuration.setMaxWildcards(1);
+        RsqlCriteriaBuilder limitedBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        limitedBuilder.compile("nickname==a*;(age==1,(age==2;age==3))", InheritedTestEntity.class);
+        assertThrows(RsqlLimitExceededException.class,
+                () -> limitedBuilder.compile("age==1;(age==2,(age==3;(age==4,age==5)))", InheritedTestEntity.class));
+        assertThrows(RsqlLimitExceededException.class,
+                () -> limitedBuilder.compile("age==1;age==2;age==3;age==4;age==5", InheritedTestEntity.class));
+        assertThrows(RsqlLimitExceededException.class,
+                () -> limitedBuilder.compile("age=in=(1,2,3,4)", InheritedTestEntity.class));
+        assertThrows(RsqlLimitExceededException.class,
+                () -> limitedBuilder.compile("nickname==a*,nickname==*b", InheritedTestEntity.class));
+    }
+
+    @Test
+    public void testMaxDepthRejectsDeepNestingBeforeParsing() {
+        String deep = "(".repeat(20_000) + "code==a" + ")".repeat(20_000);
+        for (RsqlConfiguration.ParserType parser : RsqlConfiguration.ParserType.values()) {
+            RsqlConfiguration configuration = new RsqlConfiguration();
+            configuration.setParser(parser);
+            configuration.setMaxDepth(3);
+            RsqlCriteriaBuilder limitedBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+            RsqlLimitExceededException error = assertThrows(RsqlLimitExceededException.class,
+                    () -> limitedBuilder.compile(deep, IndexedTestEntity.class));
+            assertEquals("RSQL filter exceeds the maximum depth of 3", error.getMessage());
+            // Argument lists and quoted parentheses are not groups
+            limitedBuilder.compile("(id=in=(1,2);(code=out=(a,b),(code==c;code=='((((')))", IndexedTestEntity.class);
+            assertThrows(RsqlLimitExceededException.class,
+                    () -> limitedBuilder.compile("((((code==a))))", IndexedTestEntity.class));
+        }
+    }
+
+    @Test
+    public void testUnderscoreCountsAsLikeWildcard() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setMaxWildcards(1);
+        RsqlCriteriaBuilder limitedBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        assertThrows(RsqlLimitExceededException.class,
+                () -> limitedBuilder.compile("code=like=a_c,code=like=b%", IndexedTestEntity.class));
+        // Escaped in == values, where only * is a wildcard
+        limitedBuilder.compile("code==a_c,code==b%,code==c*", IndexedTestEntity.class);
+        assertEquals(25, limitedBuilder.compile("code=like=_bc", IndexedTestEntity.class).getCost());
+    }
+
+    @Test
+    public void testCostScoresOperatorsWildcardsAndIndexes() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.getOperatorCosts().put("=ilike=", 8);
+        configuration.setMaxCost(30);
+        RsqlCriteriaBuilder scoringBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        assertEquals(1, scoringBuilder.compile("code==a", IndexedTestEntity.class).getCost());
+        assertEquals(2, scoringBuilder.compile("id=gt=5", IndexedTestEntity.class).getCost());
+        assertEquals(8, scoringBuilder.compile("code=ilike=%a", IndexedTestEntity.class).getCost() - 20);
+        // Unindexed field
+        assertEquals(11, scoringBuilder.compile("note==a", IndexedTestEntity.class).getCost());
+        assertEquals(0, scoringBuilder.compile("", IndexedTestEntity.class).getCost());
+        RsqlLimitExceededException error = assertThrows(RsqlLimitExceededException.class,
+                () -> scoringBuilder.compile("note==*a;code==b", IndexedTestEntity.class));
+        assertEquals("RSQL filter cost 32 exceeds the maximum of 30", error.getMessage());
+    }
+
+    @Test
+    public void testEntityMetadataDetectsIndexedFields() {
+        RsqlEntityMetadata metadata = RsqlEntityMetadata.of(IndexedTestEntity.class);
+
+        assertTrue(metadata.getField("id").isIndexed());
+        assertTrue(metadata.getField("code").isIndexed());
+        assertTrue(metadata.getField("email").isIndexed());
+        assertFalse(metadata.getField("note").isIndexed());
+    }
+
+    @Test
+    public void testDeeplyNestedFilterDoesNotOverflowStack() {
+        ComparisonNode leaf = (ComparisonNode) rsqlCriteriaBuilder.parse("age==1");
+        Node node = leaf;
+        for (int i = 0; i < 100_000; i++) {
+            node = i % 2 == 0
+                    ? new OrNode(List.of(leaf, node))
+                    : new AndNode(List.of(node, leaf));
+        }
+        CriteriaBuilder cb = mock(CriteriaBuilder.class, withSettings().stubOnly());
+        Root<AgeTestEntity> ageRoot = mock(Root.class, withSettings().stubOnly());
+        Predicate and = mock(Predicate.class);
+        when(cb.and(any(Predicate[].class))).thenReturn(and);
+
+        assertSame(and, rsqlCriteriaBuilder.buildPredicate(node, ageRoot, cb, AgeTestEntity.class));
+    }
+
+    @Test
+    public void testInListPaddingRoundsUpToPowerOfTwo() {
+        Path agePath = mockPath("age");
+
+        inListBuilder(RsqlConfiguration.InListStrategy.PADDING)
+                .compile("age=in=(1,2,3,4,5)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(agePath).in(new Object[] {1, 2, 3, 4, 5, 5, 5, 5});
+    }
+
+    @Test
+    public void testInListChunkingSplitsLongLists() {
+        Path agePath = mockPath("age");
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.CHUNKING);
+        configuration.setInListChunkSize(2);
+        RsqlCriteriaBuilder chunkingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        chunkingBuilder.compile("age=in=(1,2,3,4,5)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        chunkingBuilder.compile("age=out=(1,2,3)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        chunkingBuilder.compile("age=in=(6,7)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(agePath, times(2)).in(new Object[] {1, 2});
+        verify(agePath).in(new Object[] {3, 4});
+        verify(agePath).in(new Object[] {5});
+        verify(criteriaBuilder).or(any(Predicate[].class));
+        verify(criteriaBuilder).and(any(Predicate[].class));
+        verify(criteriaBuilder, times(2)).not(any());
+        verify(agePath).in(new Object[] {6, 7});
+    }
+
+    @Test
+    public void testInListChunkingPadsTheLastChunk() {
+        Path agePath = mockPath("age");
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.CHUNKING);
+        configuration.setInListChunkSize(6);
+        RsqlCriteriaBuilder chunkingBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        chunkingBuilder.compile("age=in=(1,2,3)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        chunkingBuilder.compile("age=in=(1,2,3,4,5)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        chunkingBuilder.compile("age=in=(1,2,3,4,5,6,7,8,9)", AgeTestEntity.class)
+                .toPredicate((Root) root, criteriaBuilder);
+
+        verify(agePath).in(new Object[] {1, 2, 3, 3});
+        // Never past the chunk size
+        verify(agePath).in(new Object[] {1, 2, 3, 4, 5, 5});
+        verify(agePath).in(new Object[] {1, 2, 3, 4, 5, 6});
+        verify(agePath).in(new Object[] {7, 8, 9, 9});
+    }
+
+    @Test
+    public void testInListArrayBindsOneParameter() {
+        Path agePath = mockPath("age");
+        ParameterExpression array = mock(ParameterExpression.class);
+        when(criteriaBuilder.parameter(Integer[].class)).thenReturn(array);
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.ARRAY);
+        configuration.setParameterizedQueries(true);
+        RsqlCriteriaBuilder arrayBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+        RsqlParameters parameters = arrayBuilder.createParameters();
+
+        arrayBuilder.compile("age=in=(1,2,3)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder, parameters);
+
+        verify(criteriaBuilder).function("array_contains", Boolean.class, array, agePath);
+        assertEquals(1, parameters.size());
+        TypedQuery<?> query = mock(TypedQuery.class);
+        parameters.applyTo(query);
+        verify(query).setParameter(array, new Integer[] {1, 2, 3});
+    }
+
+    @Test
+    public void testInListArrayListsValuesWithoutParameters() {
+        Path agePath = mockPath("age");
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.ARRAY);
+        configuration.setParameterizedQueries(true);
+        RsqlCriteriaBuilder arrayBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        arrayBuilder.compile("age=in=(1,2,3)", AgeTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(agePath).in(new Object[] {1, 2, 3});
+        verify(criteriaBuilder, never()).literal(any());
+    }
+
+    @Test
+    public void testInListArrayRequiresParameterizedQueries() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(RsqlConfiguration.InListStrategy.ARRAY);
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> new RsqlCriteriaBuilder(entityManager, configuration));
+        assertTrue(error.getMessage().contains("parameterized-queries"));
+    }
+
+    @Test
+    public void testWildcardEqualityEscapesLikeCharacters() {
+        Path namePath = mockPath("name");
+
+        rsqlCriteriaBuilder.compile("name=='50%_off*'", NameTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        rsqlCriteriaBuilder.compile("name==c:\\dir*", NameTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(criteriaBuilder).like(namePath, "50\\%\\_off%", '\\');
+        verify(criteriaBuilder).like(namePath, "c:\\\\dir%", '\\');
+    }
+
+    @Test
+    public void testPrefixPatternBecomesRange() {
+        Path namePath = mockPath("name");
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setPrefixRanges(true);
+        RsqlCriteriaBuilder rangeBuilder = new RsqlCriteriaBuilder(entityManager, configuration);
+
+        rangeBuilder.compile("name==abc*", NameTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        rangeBuilder.compile("name!=xy*", NameTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+        rangeBuilder.compile("name==*abc*", NameTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+
+        verify(criteriaBuilder).greaterThanOrEqualTo(namePath, "abc");
+        verify(criteriaBuilder).lessThan(namePath, "abd");
+        verify(criteriaBuilder).lessThan(namePath, "xy");
+        verify(criteriaBuilder).greaterThanOrEqualTo(namePath, "xz");
+        verify(criteriaBuilder).like(namePath, "%abc%", '\\');
+        assertEquals("a\u0001", RsqlPrefixRanges.successor("a\u0000"));
+        assertEquals("b", RsqlPrefixRanges.successor("a\uffff"));
+        assertNull(RsqlPrefixRanges.successor("\uffff"));
+    }
+
+    @Test
+    public void testCaseInsensitiveFieldUsesConfiguredExpression() {
+        Path emailPath = mockPath("email");
+        Path namePath = mockPath("name");
+        Path codePath = mockPath("code");
+        Path codeLowerPath = mockPath("codeLower");
+        Expression upperName = mock(Expression.class);
+        when(codePath.getParentPath()).thenReturn(root);
+        when(criteriaBuilder.upper(namePath)).thenReturn(upperName);
+
+        compileCaseInsensitive("email=icase=Jane@Example.com");
+        compileCaseInsensitive("name=ilike=jo%");
+        compileCaseInsensitive("code=inotlike=AB%");
+
+        verify(criteriaBuilder).equal(emailPath, "jane@example.com");
+        verify(criteriaBuilder).like(upperName, "JO%");
+        verify(criteriaBuilder).notLike(codeLowerPath, "ab%");
+        verify(criteriaBuilder, never()).lower(any());
+    }
+
+    @Test
+    public void testCaseInsensitiveArgumentsIgnoreDefaultLocale() {
+        Path namePath = mock(Path.class);
+        Expression lowerName = mock(Expression.class);
+        when(root.get("name")).thenReturn(namePath);
+        when(criteriaBuilder.lower(namePath)).thenReturn(lowerName);
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        try {
+            RsqlQueryPlan<NameTestEntity> plan = rsqlCriteriaBuilder.compile("name=icase=TITLE", NameTestEntity.class);
+            plan.toPredicate((Root) root, criteriaBuilder);
+
+            verify(criteriaBuilder).equal(lowerName, "title");
+            NameTestEntity entity = new NameTestEntity();
+            entity.setName("TITLE");
+            assertTrue(plan.asPredicate().test(entity));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testInstrumentationReceivesFilterSize() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        RsqlCriteriaBuilder instrumented = new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration(),
+                List.of(recorder(first), RsqlInstrumentation.NOOP, recorder(second)));
+
+        instrumented.compile("age=in=(1,2,3);age>3,age=out=(4,5)", AgeTestEntity.class);
+
+        assertEquals(List.of(
+                "PARSE NODES [5]",
+                "PARSE (age=in=(?);age=gt=?),age=out=(?)",
+                "COMPILE IN_SIZES [3, 2]",
+                "COMPILE (age=in=(?);age=gt=?),age=out=(?)"), first);
+        assertEquals(first, second);
+        assertSame(RsqlInstrumentation.NOOP, RsqlInstrumentation.of(List.of(RsqlInstrumentation.NOOP)));
+    }
+
+    private static RsqlInstrumentation recorder(List<String> events) {
+        return new RsqlInstrumentation() {
+            @Override
+            public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                return new Observation() {
+                    @Override
+                    public void annotate(Attribute attribute, long... values) {
+                        events.add(stage + " " + attribute + " " + Arrays.toString(values));
+                    }
+
+                    @Override
+                    public void stop(String finalFingerprint, Throwable error) {
+                        events.add(stage + " " + (finalFingerprint != null ? finalFingerprint : fingerprint));
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void testFingerprintStripsValues() {
+        assertEquals("age!=?;(age=gt=?,age=in=(?));age=bt=(?)",
+                rsqlCriteriaBuilder.compile("age!=0;(age>3,age=in=(4,5,6));age=bt=(1,2)", AgeTestEntity.class)
+                        .getFingerprint());
+        assertEquals(rsqlCriteriaBuilder.compile("age==1,age==2", AgeTestEntity.class).getFingerprint(),
+                rsqlCriteriaBuilder.compile("age==7,age=='8'", AgeTestEntity.class).getFingerprint());
+        assertEquals("", rsqlCriteriaBuilder.compile(" ", AgeTestEntity.class).getFingerprint());
+    }
+
+    @Test
+    public void testObservationStopsWhenCompilingThrowsAnError() {
+        List<String> events = new ArrayList<>();
+        RsqlCriteriaBuilder instrumented = new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration(),
+                new RsqlInstrumentation() {
+                    @Override
+                    public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                        return (finalFingerprint, error) -> events.add(
+                                stage + " " + (error == null ? "ok" : error.getClass().getSimpleName()));
+                    }
+                });
+
+        assertThrows(ExceptionInInitializerError.class,
+                () -> instrumented.compile("phase==NEW", BrokenEnumTestEntity.class));
+
+        assertEquals(List.of("PARSE ok", "COMPILE ExceptionInInitializerError"), events);
+    }
+
+    @Test
+    public void testLongFingerprintsAreBounded() {
+        String longer = String.join(";", Collections.nCopies(60, "age==1"));
+        String shorter = String.join(";", Collections.nCopies(59, "age==1"));
+        String fingerprint = rsqlCriteriaBuilder.compile(longer, AgeTestEntity.class).getFingerprint();
+        String other = rsqlCriteriaBuilder.compile(shorter, AgeTestEntity.class).getFingerprint();
+
+        assertEquals(200, fingerprint.length());
+        assertEquals(200, other.length());
+        assertTrue(fingerprint.startsWith("age==?;age==?;"));
+        assertTrue(fingerprint.matches(".*#[0-9a-f]{16}"));
+        assertNotEquals(fingerprint, other);
+        assertEquals(fingerprint, rsqlCriteriaBuilder.compile(longer.replace('1', '2'), AgeTestEntity.class)
+                .getFingerprint());
+    }
+
+    private void compileCaseInsensitive(String rsql) {
+        rsqlCriteriaBuilder.compile(rsql, CaseInsensitiveTestEntity.class).toPredicate((Root) root, criteriaBuilder);
+    }
+
+    private RsqlCriteriaBuilder inListBuilder(RsqlConfiguration.InListStrategy strategy) {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setInListStrategy(strategy);
+        return new RsqlCriteriaBuilder(entityManager, configuration);
+    }
+
+    private Node optimize(String rsql) {
+        return rsqlCriteriaBuilder.optimize(rsqlCriteriaBuilder.parse(rsql), InheritedTestEntity.class);
+    }
+
+    private Node optimize(String rsql, Class<?> entityClass) {
+        return rsqlCriteriaBuilder.optimize(rsqlCriteriaBuilder.parse(rsql), entityClass);
+    }
+
+    private void assertOptimized(String expected, String rsql) {
+        assertEquals(rsqlCriteriaBuilder.parse(expected),
+                rsqlCriteriaBuilder.optimize(rsqlCriteriaBuilder.parse(rsql), InheritedTestEntity.class));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> CriteriaQuery<T> mockQuery(Class<T> entityClass) {
+        CriteriaQuery<T> query = mock(CriteriaQuery.class);
+        when(criteriaBuilder.createQuery(entityClass)).thenReturn(query);
+        when(query.from(entityClass)).thenReturn((Root) root);
+        return query;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Path mockPath(String attribute) {
+        Path path = mock(Path.class);
+        when(root.get(attribute)).thenReturn(path);
+        return path;
+    }
+
     // Simple test entity for testing
     public static class TestEntity {
         private String linkedin;
@@ -443,26 +1113,26 @@ public class RsqlCriteriaBuilderTest {
 
     // Test entity with Date fields
     public static class DateTestEntity {
-        private java.util.Date modified;
+        private Date modified;
 
-        public java.util.Date getModified() {
+        public Date getModified() {
             return modified;
         }
 
-        public void setModified(java.util.Date modified) {
+        public void setModified(Date modified) {
             this.modified = modified;
         }
     }
 
     // Test entity with Timestamp fields
     public static class TimestampTestEntity {
-        private java.sql.Timestamp created;
+        private Timestamp created;
 
-        public java.sql.Timestamp getCreated() {
+        public Timestamp getCreated() {
             return created;
         }
 
-        public void setCreated(java.sql.Timestamp created) {
+        public void setCreated(Timestamp created) {
             this.created = created;
         }
     }
@@ -480,6 +1150,53 @@ public class RsqlCriteriaBuilderTest {
         }
     }
 
+    // Test entity whose enum fails to initialize when its first value is converted
+    public static class BrokenEnumTestEntity {
+        private Phase phase;
+
+        public enum Phase {
+            NEW;
+
+            static {
+                failInitialization();
+            }
+
+            private static void failInitialization() {
+                throw new IllegalStateException("Phase cannot be initialized");
+            }
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+    }
+
+    // Test entity with numeric, string and enum fields for optimizer tests
+    public static class PriceTestEntity {
+        private BigDecimal price;
+        private Double ratio;
+        private String name;
+        private Status status;
+
+        public enum Status { OPEN, CLOSED }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public Double getRatio() {
+            return ratio;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+    }
+
     // Test entity with name field for case-insensitive tests
     public static class NameTestEntity {
         private String name;
@@ -492,4 +1209,37 @@ public class RsqlCriteriaBuilderTest {
             this.name = name;
         }
     }
+
+    // Test entity with indexed and unindexed fields for cost tests
+    @Table(indexes = @Index(columnList = "CODE desc, note"))
+    public static class IndexedTestEntity {
+        @Id
+        private Long id;
+        private String code;
+        @Column(name = "email_address", unique = true)
+        private String email;
+        private String note;
+    }
+
+    public static class CaseInsensitiveTestEntity {
+        @RsqlCaseInsensitive(normalization = RsqlCaseInsensitive.Normalization.NONE)
+        private String email;
+        @RsqlCaseInsensitive(normalization = RsqlCaseInsensitive.Normalization.UPPER)
+        private String name;
+        @RsqlCaseInsensitive(normalization = RsqlCaseInsensitive.Normalization.NONE, attribute = "codeLower")
+        private String code;
+        private String codeLower;
+    }
+
+    public static class InheritedTestEntity extends AgeTestEntity {
+        private String nickname;
+
+        public String getNickname() {
+            return nickname;
+        }
+
+        public void setNickname(String nickname) {
+            this.nickname = nickname;
+        }
+    }
 }
@@ -0,0 +1,343 @@
+package com.charleslobo.micronaut.rsql;
+
+import org.junit.Before;
+import org.junit.Test;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the in-memory predicates of compiled plans.
+ */
+public class RsqlInMemoryPredicateTest {
+
+    private RsqlCriteriaBuilder builder;
+    private List<Person> people;
+
+    @Before
+    public void setUp() {
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class));
+        people = List.of(
+            new Person("alice", 31, 90, Status.ACTIVE, "Alice@Example.com"),
+            new Person("bob", 17, null, Status.ACTIVE, "bob@example.com"),
+            new Person("carol", 45, 70, Status.RETIRED, null),
+            new Person(null, 60, 50, Status.INACTIVE, "n_a%@example.com"));
+    }
+
+    @Test
+    public void testComparisons() {
+        assertMatches("name==bob", "bob");
+        assertMatches("name!=bob", "alice", "carol");
+        assertMatches("age=gt=31", "carol", null);
+        assertMatches("age=ge=31;age<60", "alice", "carol");
+        assertMatches("age=bt=(17,31)", "alice", "bob");
+        assertMatches("age=nb=(17,31)", "carol", null);
+        assertMatches("status=in=(RETIRED,INACTIVE)", "carol", null);
+        assertMatches("status=out=(ACTIVE)", "carol", null);
+        assertMatches("age<18,status==RETIRED", "bob", "carol");
+    }
+
+    @Test
+    public void testEqualityComparesValuesAsTheDatabase() {
+        long millis = 1_700_000_000_123L;
+        // As loaded by a JPA provider: a Timestamp in a Date attribute
+        Reading reading = new Reading(new BigDecimal("1.00"), new Timestamp(millis));
+
+        assertTrue(builder.toPredicate("amount==1.0", Reading.class).test(reading));
+        assertTrue(builder.toPredicate("amount=in=(1.0,2)", Reading.class).test(reading));
+        assertFalse(builder.toPredicate("amount!=1", Reading.class).test(reading));
+        assertFalse(builder.toPredicate("amount=out=(1,2.0)", Reading.class).test(reading));
+        assertTrue(builder.toPredicate("amount=bt=(1,1.000)", Reading.class).test(reading));
+        assertTrue(builder.toPredicate("taken==" + millis, Reading.class).test(reading));
+        assertTrue(builder.toPredicate("taken=in=(0," + millis + ")", Reading.class).test(reading));
+        assertFalse(builder.toPredicate("taken!=" + millis, Reading.class).test(reading));
+        assertFalse(builder.toPredicate("taken=gt=" + millis, Reading.class).test(reading));
+    }
+
+    @Test
+    public void testNullsOnlyMatchNullChecks() {
+        assertMatches("score=isnull=true", "bob");
+        assertMatches("score=nn=true", "alice", "carol", null);
+        // As in SQL, a comparison with a null value is not true
+        assertMatches("score!=90", "carol", null);
+        assertMatches("score=out=(70)", "alice", null);
+        assertMatches("name=notlike=a%", "bob", "carol");
+    }
+
+    @Test
+    public void testPatterns() {
+        assertMatches("name==*o*", "bob", "carol");
+        assertMatches("name==car*", "carol");
+        assertMatches("name==*ce", "alice");
+        assertMatches("name==b*b", "bob");
+        assertMatches("name!=*o*", "alice");
+        assertMatches("name=like=_ob", "bob");
+        assertMatches("name=ilike=AL%", "alice");
+        assertMatches("name=icase=CAROL", "carol");
+        // Wildcard values escape the LIKE metacharacters
+        assertMatches("email==n_a%*", (String) null);
+        assertMatches("email==n*a*", (String) null);
+        assertMatches("email=like=n_a%", (String) null);
+    }
+
+    @Test
+    public void testCaseInsensitiveAnnotation() {
+        assertMatches("email=icase=ALICE@EXAMPLE.COM", "alice");
+        assertMatches("email=ilike=BOB%", "bob");
+    }
+
+    @Test
+    public void testFilterlessAndUnsatisfiablePlans() {
+        assertEquals(4, filter("").size());
+        assertMatches("age=gt=1,age=lt=1,age==1", "alice", "bob", "carol", null);
+
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        RsqlCriteriaBuilder optimizing = new RsqlCriteriaBuilder(mock(EntityManager.class), configuration);
+        RsqlQueryPlan<Person> plan = optimizing.compile("age==1;age==2", Person.class);
+        assertTrue(plan.isUnsatisfiable());
+        assertTrue(people.stream().noneMatch(plan.asPredicate()));
+    }
+
+    @Test
+    public void testInListStrategiesMatchPlainLists() {
+        for (RsqlConfiguration.InListStrategy strategy : RsqlConfiguration.InListStrategy.values()) {
+            RsqlConfiguration configuration = new RsqlConfiguration();
+            configuration.setInListStrategy(strategy);
+            configuration.setInListChunkSize(1);
+            configuration.setParameterizedQueries(strategy == RsqlConfiguration.InListStrategy.ARRAY);
+            builder = new RsqlCriteriaBuilder(mock(EntityManager.class), configuration);
+            assertMatches("age=in=(17,45,99)", "bob", "carol");
+            assertMatches("age=out=(17,45,99)", "alice", null);
+        }
+    }
+
+    @Test
+    public void testPlanCachesPredicate() {
+        RsqlQueryPlan<Person> plan = builder.compile("name==bob", Person.class);
+        assertSame(plan.asPredicate(), plan.asPredicate());
+    }
+
+    @Test
+    public void testAccessorUsesGetterOrField() {
+        RsqlField name = RsqlEntityMetadata.of(Person.class).findField("name");
+        RsqlField score = RsqlEntityMetadata.of(Person.class).findField("score");
+        Person alice = people.get(0);
+        alice.nameReads = 0;
+        assertEquals("alice", name.accessor().apply(alice));
+        assertEquals(1, alice.nameReads);
+        // No getter: read through the field
+        assertEquals(90, score.accessor().apply(alice));
+        assertSame(name.accessor(), name.accessor());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCustomOperatorWithoutMatcherIsRejected() {
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class), new RsqlConfiguration(),
+                Map.of(new ComparisonOperator("=mod=", true),
+                        (cb, path, arguments) -> null));
+        builder.toPredicate("age=mod=(2,0)", Person.class);
+    }
+
+    @Test
+    public void testGeneratedMatchersMatchInterpretedOnes() {
+        RsqlMatcherCompiler compiler = new RsqlMatcherCompiler(16, Runnable::run, RsqlInstrumentation.NOOP);
+        List<String> filters = List.of(
+            "name==bob",
+            "age=gt=20;status!=RETIRED",
+            "age<18,(status==RETIRED;score=nn=true),name==*ce",
+            // More comparisons than the template has slots
+            "age==1,age==2,age==3,age==4,age==5,age==6,age==7,age==8,age==9,age==10,age==60",
+            "name!=a;name!=b;name!=c;name!=d;name!=e;name!=f;name!=g;name!=h;name!=bob");
+        for (String rsql : filters) {
+            RsqlQueryPlan.Step step = builder.compile(rsql, Person.class).getStep();
+            Predicate<Object> generated = compiler.generate(step);
+            assertTrue(isGenerated(generated));
+            for (Person person : people) {
+                assertEquals(rsql, step.toMatcher().test(person), generated.test(person));
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedMatcherCacheTellsApartValuesWithEqualStrings() {
+        RsqlMatcherCompiler compiler = new RsqlMatcherCompiler(16, Runnable::run, RsqlInstrumentation.NOOP);
+        // Both print as [alice, bob]
+        assertMatches(compiler, "name=in=('alice, bob')", Person.class, people.get(0), false);
+        assertMatches(compiler, "name=in=(alice,bob)", Person.class, people.get(0), true);
+        // Both print as the same second
+        Reading reading = new Reading(BigDecimal.ONE, new Date(1_700_000_000_500L));
+        assertMatches(compiler, "taken==1700000000000", Reading.class, reading, false);
+        assertMatches(compiler, "taken==1700000000500", Reading.class, reading, true);
+    }
+
+    @Test
+    public void testPlanSwitchesToGeneratedMatcher() throws InterruptedException {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setGeneratedMatchers(true);
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class), configuration);
+        RsqlQueryPlan<Person> plan = builder.compile("age=gt=20;status==ACTIVE", Person.class);
+        Predicate<Person> predicate = plan.asPredicate();
+        for (int i = 0; i < 500 && !isGenerated(predicate); i++) {
+            Thread.sleep(10);
+            predicate = plan.asPredicate();
+        }
+        assertTrue(isGenerated(predicate));
+        assertMatches("age=gt=20;status==ACTIVE", "alice");
+        // Equal filters reuse the generated class
+        assertSame(predicate, builder.compile("age=gt=20;status==ACTIVE", Person.class).asPredicate());
+    }
+
+    @Test
+    public void testGenerationFailureIsReported() {
+        AtomicInteger matchers = new AtomicInteger();
+        ComparisonOperator named = new ComparisonOperator("=named=");
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class), new RsqlConfiguration(),
+                Map.of(named, new RsqlOperatorHandler() {
+                    @Override
+                    public jakarta.persistence.criteria.Predicate toPredicate(
+                            CriteriaBuilder cb, Path<?> path, Object[] arguments) {
+                        return null;
+                    }
+
+                    @Override
+                    public Predicate<Object> toMatcher(Object[] arguments) {
+                        // Only the interpreted predicate gets a matcher
+                        if (matchers.incrementAndGet() > 1) {
+                            throw new IllegalStateException("No second matcher");
+                        }
+                        return arguments[0]::equals;
+                    }
+                }));
+        List<Throwable> errors = new ArrayList<>();
+        RsqlInstrumentation instrumentation = new RsqlInstrumentation() {
+            @Override
+            public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                assertEquals(Stage.GENERATE, stage);
+                assertEquals("name=named=?", fingerprint);
+                return (stopFingerprint, error) -> errors.add(error);
+            }
+        };
+        RsqlMatcherCompiler compiler = new RsqlMatcherCompiler(16, Runnable::run, instrumentation);
+        RsqlQueryPlan<Person> plan = builder.compile("name=named=bob", Person.class);
+        assertTrue(plan.asPredicate().test(people.get(1)));
+
+        AtomicReference<Predicate<Object>> generated = new AtomicReference<>();
+        compiler.compile(plan, generated::set);
+
+        assertNull(generated.get());
+        assertEquals(1, errors.size());
+        assertEquals("No second matcher", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void testDeepPlansTestWithoutRecursion() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParser(RsqlConfiguration.ParserType.BUILT_IN);
+        configuration.setGeneratedMatchers(true);
+        builder = new RsqlCriteriaBuilder(mock(EntityManager.class), configuration);
+        String deep = "age=gt=0;(name==nobody,".repeat(20_000) + "age==31" + ")".repeat(20_000);
+
+        RsqlQueryPlan<Person> plan = builder.compile(deep, Person.class);
+
+        assertEquals(List.of(people.get(0)), people.stream().filter(plan.asPredicate()).toList());
+        // Generated classes would nest as deeply, so the plan is not compiled
+        assertFalse(isGenerated(plan.asPredicate()));
+        assertMatches("age=gt=0;(name==nobody,(age=gt=0;(name==nobody,age==31)))", "alice");
+    }
+
+    private static boolean isGenerated(Predicate<?> predicate) {
+        // Lambdas are hidden classes too
+        return predicate.getClass().isHidden()
+                && predicate.getClass().getName().startsWith(RsqlMatcherTemplate.class.getName() + "/");
+    }
+
+    private <T> void assertMatches(RsqlMatcherCompiler compiler, String rsql, Class<T> entityClass, T entity,
+            boolean expected) {
+        AtomicReference<Predicate<Object>> generated =
+                new AtomicReference<>();
+        compiler.compile(builder.compile(rsql, entityClass), generated::set);
+        assertEquals(rsql, expected, generated.get().test(entity));
+    }
+
+    private void assertMatches(String rsql, String... names) {
+        List<String> expected = Arrays.asList(names);
+        assertEquals(rsql, expected, filter(rsql).stream().map(p -> p.name).collect(Collectors.toList()));
+    }
+
+    private List<Person> filter(String rsql) {
+        Predicate<Person> predicate = builder.toPredicate(rsql, Person.class);
+        return people.stream().filter(predicate).collect(Collectors.toList());
+    }
+
+    public enum Status { ACTIVE, INACTIVE, RETIRED }
+
+    public static class Reading {
+        private BigDecimal amount;
+        private Date taken;
+
+        public Reading(BigDecimal amount, Date taken) {
+            this.amount = amount;
+            this.taken = taken;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public Date getTaken() {
+            return taken;
+        }
+    }
+
+    public static class Person {
+        private String name;
+        private int age;
+        private Integer score;
+        private Status status;
+        @RsqlCaseInsensitive(normalization = RsqlCaseInsensitive.Normalization.UPPER)
+        private String email;
+        private transient int nameReads;
+
+        public Person(String name, int age, Integer score, Status status, String email) {
+            this.name = name;
+            this.age = age;
+            this.score = score;
+            this.status = status;
+            this.email = email;
+        }
+
+        public String getName() {
+            nameReads++;
+            return name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.charleslobo.micronaut.rsql;
+
+import org.junit.Test;
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.RSQLParserException;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests: the built-in parser must accept exactly what rsql-parser accepts and
+ * produce equal ASTs.
+ */
+public class RsqlParserTest {
+
+    private static final Set<ComparisonOperator> OPERATORS = new HashSet<>(RSQLOperators.defaultOperators());
+
+    static {
+        OPERATORS.add(new ComparisonOperator("=isnull=", true));
+        OPERATORS.add(new ComparisonOperator("=bt=", true));
+        OPERATORS.add(new ComparisonOperator("=ilike=", true));
+    }
+
+    private final RSQLParser reference = new RSQLParser(OPERATORS);
+    private final RsqlParser parser = new RsqlParser(OPERATORS);
+
+    @Test
+    public void testMatchesReferenceParserOnCorpus() {
+        List<String> corpus = List.of(
+            "name==john",
+            "name!=john",
+            "age=gt=18;age=lt=65",
+            "age>18;age<=65",
+            "a==1,b==2;c==3",
+            "(a==1,b==2);c==3",
+            "((a==1))",
+            "a==1 and b==2 or c==3",
+            "a==1  and b==2",
+            "a==1 ; b==2 , c==3",
+            "status=in=(active,pending)",
+            "status=out=(active, pending ,closed)",
+            "status=in=(active or pending)",
+            "status=in=single",
+            "name=='john smith'",
+            "name==\"john \\\"the\\\" smith\"",
+            "name=='it\\'s'",
+            "name==''",
+            "name==*tata-consultancy-services",
+            "created=gt=2024-01-01T00:00:00Z",
+            "age=bt=(18,65)",
+            "x=isnull=true",
+            "name=ilike=*JOHN*",
+            "a.b.c==x\\y",
+            "name==\tjohn",
+            "name ==  john",
+            "a==1;(b==2,(c==3;d==4))"
+        );
+        for (String rsql : corpus) {
+            assertEquals("Parsing " + rsql, reference.parse(rsql), parser.parse(rsql));
+        }
+    }
+
+    @Test
+    public void testRejectsWhatReferenceParserRejects() {
+        List<String> invalid = List.of(
+            "",
+            " ",
+            "name",
+            "name==",
+            "name=foo=bar",
+            "name=x",
+            "==john",
+            "name==john;",
+            "name==john,",
+            "(name==john",
+            "name==john)",
+            "name=='john",
+            "name==john smith",
+            "status=in=()",
+            "status=in=(a,)",
+            "a==1 andb==2",
+            "name==(a,b)"
+        );
+        for (String rsql : invalid) {
+            assertThrows("Reference parser should reject " + rsql, RSQLParserException.class, () -> reference.parse(rsql));
+            assertThrows("Parser should reject " + rsql, RsqlSyntaxException.class, () -> parser.parse(rsql));
+        }
+    }
+
+    @Test
+    public void testMatchesReferenceParserOnRandomInput() {
+        String[] fragments = {
+            "a", "name", "b1", "x.y", "==", "!=", "=gt=", "<", ">=", "=in=", "=bt=", "=foo=",
+            "(", ")", ",", ";", " and ", " or ", " ", "\t", "\n", "é", "'", "\"", "\\", "1", "*", "=", "!", "~"
+        };
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder rsql = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                rsql.append(fragments[random.nextInt(fragments.length)]);
+            }
+            assertSameOutcome(rsql.toString());
+        }
+    }
+
+    @Test
+    public void testSyntaxErrorReportsPosition() {
+        RsqlSyntaxException error = assertThrows(RsqlSyntaxException.class, () -> parser.parse("name==john;age=foo=1"));
+
+        assertEquals(14, error.getPosition());
+        assertTrue(error.getMessage().contains("=foo="));
+        assertTrue("Should be catchable as RSQLParserException", error instanceof RSQLParserException);
+        assertEquals(0, error.getStackTrace().length);
+    }
+
+    @Test
+    public void testMultipleArgumentsForSingleValueOperatorIsSyntaxError() {
+        RsqlSyntaxException error = assertThrows(RsqlSyntaxException.class, () -> parser.parse("name==(a,b)"));
+
+        assertEquals(6, error.getPosition());
+    }
+
+    @Test
+    public void testParsesDeepNestingWithoutRecursion() {
+        String deep = "a==1;(b==2,".repeat(20_000) + "c==3" + ")".repeat(20_000);
+
+        Node node = parser.parse(deep);
+        int depth = 0;
+        while (node instanceof LogicalNode logical) {
+            node = logical.getChildren().get(1);
+            depth++;
+        }
+        assertEquals(40_000, depth);
+        assertEquals(List.of("3"), ((ComparisonNode) node).getArguments());
+    }
+
+    @Test
+    public void testBuilderCapsNestingForRecursiveParser() {
+        String deep = "(".repeat(20_000) + "a==1" + ")".repeat(20_000);
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParser(RsqlConfiguration.ParserType.BUILT_IN);
+
+        assertThrows(RsqlLimitExceededException.class, () -> new RsqlCriteriaBuilder(null).parse(deep));
+        assertEquals(new RsqlCriteriaBuilder(null).parse("a==1"), new RsqlCriteriaBuilder(null, configuration).parse(deep));
+    }
+
+    @Test
+    public void testBuilderUsesConfiguredParser() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setParser(RsqlConfiguration.ParserType.BUILT_IN);
+        RsqlCriteriaBuilder builder = new RsqlCriteriaBuilder(null, configuration);
+
+        assertThrows(RsqlSyntaxException.class, () -> builder.parse("name=="));
+        assertEquals(new RsqlCriteriaBuilder(null).parse("a==1;b=bt=(1,2)"), builder.parse("a==1;b=bt=(1,2)"));
+    }
+
+    private void assertSameOutcome(String rsql) {
+        Node expected;
+        try {
+            expected = reference.parse(rsql);
+        } catch (RSQLParserException e) {
+            assertThrows("Parser should reject " + rsql, RsqlSyntaxException.class, () -> parser.parse(rsql));
+            return;
+        }
+        assertEquals("Parsing " + rsql, expected, parser.parse(rsql));
+    }
+}
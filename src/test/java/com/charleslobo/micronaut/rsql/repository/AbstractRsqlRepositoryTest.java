@@ -0,0 +1,504 @@
+package com.charleslobo.micronaut.rsql.repository;
+
+import com.charleslobo.micronaut.rsql.RsqlConfiguration;
+import com.charleslobo.micronaut.rsql.RsqlCache;
+import com.charleslobo.micronaut.rsql.RsqlCriteriaBuilder;
+import com.charleslobo.micronaut.rsql.RsqlInstrumentation;
+import com.charleslobo.micronaut.rsql.RsqlValueConverters;
+import io.micronaut.data.model.CursoredPage;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Slice;
+import io.micronaut.data.model.Sort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AbstractRsqlRepositoryTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private CriteriaBuilder criteriaBuilder;
+
+    @Mock
+    private CriteriaQuery<TestEntity> criteriaQuery;
+
+    @Mock
+    private CriteriaQuery<Long> countCriteriaQuery;
+
+    @Mock
+    private Root<TestEntity> root;
+
+    @Mock
+    private TypedQuery<TestEntity> query;
+
+    @Mock
+    private TypedQuery<Long> countQuery;
+
+    private TestRepository repository;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(entityManager.getCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(criteriaBuilder.createQuery(TestEntity.class)).thenReturn(criteriaQuery);
+        when(criteriaBuilder.createQuery(Long.class)).thenReturn(countCriteriaQuery);
+        when(criteriaQuery.from(TestEntity.class)).thenReturn(root);
+        when(criteriaQuery.getRoots()).thenReturn(Set.of(root));
+        when(countCriteriaQuery.from(TestEntity.class)).thenReturn(root);
+        when(entityManager.createQuery(criteriaQuery)).thenReturn(query);
+        when(entityManager.createQuery(countCriteriaQuery)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(100L);
+        repository = new TestRepository(entityManager, new RsqlCriteriaBuilder(entityManager));
+    }
+
+    @Test
+    public void testShortPageSkipsCountQuery() {
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        Page<TestEntity> page = repository.findByRsql("", Pageable.from(2, 10));
+
+        assertEquals(22, page.getTotalSize());
+        verify(countQuery, never()).getSingleResult();
+    }
+
+    @Test
+    public void testFullPageRunsCountQuery() {
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        Page<TestEntity> page = repository.findByRsql(" ", Pageable.from(0, 2));
+
+        assertEquals(100, page.getTotalSize());
+        verify(query).setFirstResult(0);
+        verify(query).setMaxResults(2);
+        verify(countCriteriaQuery, never()).where(any(Predicate.class));
+    }
+
+    @Test
+    public void testEmptyPageBeyondFirstRunsCountQuery() {
+        when(query.getResultList()).thenReturn(List.of());
+
+        Page<TestEntity> page = repository.findByRsql("", Pageable.from(5, 10));
+
+        assertEquals(100, page.getTotalSize());
+    }
+
+    @Test
+    public void testConcurrentCountUsesSeparateEntityManager() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        EntityManager countEntityManager = mock(EntityManager.class);
+        EntityTransaction transaction = mock(EntityTransaction.class);
+        TypedQuery<Long> concurrentCountQuery = mock(TypedQuery.class);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.createEntityManager()).thenReturn(countEntityManager);
+        when(countEntityManager.getTransaction()).thenReturn(transaction);
+        when(countEntityManager.getCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(countEntityManager.createQuery(countCriteriaQuery)).thenReturn(concurrentCountQuery);
+        when(concurrentCountQuery.getSingleResult()).thenReturn(250L);
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        repository = new TestRepository(entityManager, new RsqlCriteriaBuilder(entityManager, configuration));
+
+        Page<TestEntity> page = repository.findByRsql("", Pageable.from(0, 2));
+
+        assertEquals(250, page.getTotalSize());
+        verify(countQuery, never()).getSingleResult();
+        verify(transaction).begin();
+        verify(countEntityManager).setProperty("org.hibernate.readOnly", true);
+        verify(countEntityManager).setFlushMode(FlushModeType.COMMIT);
+        verify(concurrentCountQuery).setHint("org.hibernate.readOnly", true);
+        verify(transaction).rollback();
+        verify(countEntityManager).close();
+    }
+
+    @Test
+    public void testConcurrentCountRunsInSubmittingContext() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        EntityManager countEntityManager = mock(EntityManager.class);
+        TypedQuery<Long> concurrentCountQuery = mock(TypedQuery.class);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.createEntityManager()).thenReturn(countEntityManager);
+        when(countEntityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        when(countEntityManager.getCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(countEntityManager.createQuery(countCriteriaQuery)).thenReturn(concurrentCountQuery);
+        when(concurrentCountQuery.getSingleResult()).thenReturn(250L);
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+        ThreadLocal<String> context = new ThreadLocal<>();
+        List<String> counts = new CopyOnWriteArrayList<>();
+        RsqlInstrumentation instrumentation = new RsqlInstrumentation() {
+            @Override
+            public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                if (stage == Stage.COUNT) {
+                    counts.add(context.get());
+                }
+                return Observation.NOOP;
+            }
+
+            @Override
+            public Runnable wrap(Runnable task) {
+                String submitting = context.get();
+                return () -> {
+                    context.set(submitting);
+                    try {
+                        task.run();
+                    } finally {
+                        context.remove();
+                    }
+                };
+            }
+        };
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        repository = new TestRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, configuration, instrumentation));
+
+        context.set("request");
+        try {
+            assertEquals(250, repository.findByRsql("", Pageable.from(0, 2)).getTotalSize());
+        } finally {
+            context.remove();
+        }
+
+        assertEquals(List.of("request"), counts);
+    }
+
+    @Test
+    public void testConcurrentCountFallsBackWhenPermitsAreTaken() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        configuration.setConcurrentCountLimit(1);
+        RsqlCriteriaBuilder builder = new RsqlCriteriaBuilder(entityManager, configuration);
+        repository = new TestRepository(entityManager, builder);
+        assertTrue(builder.getCountPermits().tryAcquire());
+
+        Page<TestEntity> page = repository.findByRsql("", Pageable.from(0, 2));
+
+        assertEquals(100, page.getTotalSize());
+        verify(entityManagerFactory, never()).createEntityManager();
+    }
+
+    @Test
+    public void testFailedPageQueryLetsConcurrentCountFinish() throws Exception {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        EntityManager countEntityManager = mock(EntityManager.class);
+        EntityTransaction transaction = mock(EntityTransaction.class);
+        TypedQuery<Long> concurrentCountQuery = mock(TypedQuery.class);
+        CountDownLatch counting = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.createEntityManager()).thenReturn(countEntityManager);
+        when(countEntityManager.getTransaction()).thenReturn(transaction);
+        when(countEntityManager.getCriteriaBuilder()).thenReturn(criteriaBuilder);
+        when(countEntityManager.createQuery(countCriteriaQuery)).thenReturn(concurrentCountQuery);
+        when(concurrentCountQuery.getSingleResult()).thenAnswer(invocation -> {
+            counting.countDown();
+            try {
+                finish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return 250L;
+        });
+        when(query.getResultList()).thenAnswer(invocation -> {
+            counting.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("Page query failed");
+        });
+
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        configuration.setConcurrentCountLimit(1);
+        RsqlCriteriaBuilder builder = new RsqlCriteriaBuilder(entityManager, configuration);
+        repository = new TestRepository(entityManager, builder);
+
+        assertThrows(IllegalStateException.class, () -> repository.findByRsql("", Pageable.from(0, 2)));
+
+        assertFalse(builder.getCountPermits().tryAcquire());
+        finish.countDown();
+        verify(transaction, timeout(5000)).rollback();
+        verify(countEntityManager, timeout(5000)).close();
+        assertTrue(builder.getCountPermits().tryAcquire(5, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    public void testConcurrentCountSkippedInsideTransaction() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManager.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManager.isJoinedToTransaction()).thenReturn(true);
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setConcurrentCount(true);
+        repository = new TestRepository(entityManager, new RsqlCriteriaBuilder(entityManager, configuration));
+
+        Page<TestEntity> page = repository.findByRsql("", Pageable.from(0, 2));
+
+        assertEquals(100, page.getTotalSize());
+        verify(entityManagerFactory, never()).createEntityManager();
+    }
+
+    @Test
+    public void testSliceFetchesOneExtraRowInsteadOfCounting() {
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity(), new TestEntity()));
+
+        Slice<TestEntity> slice = repository.findSliceByRsql("", Pageable.from(1, 2));
+
+        assertTrue(slice.hasNext());
+        assertEquals(2, slice.getContent().size());
+        verify(query).setFirstResult(2);
+        verify(query).setMaxResults(3);
+        verify(countQuery, never()).getSingleResult();
+    }
+
+    @Test
+    public void testSliceWithoutExtraRowHasNoNext() {
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        Slice<TestEntity> slice = repository.findSliceByRsql("", Pageable.from(0, 2));
+
+        assertFalse(slice.hasNext());
+        assertEquals(2, slice.getContent().size());
+    }
+
+    @Test
+    public void testStreamDetachesConsumedBatches() {
+        List<TestEntity> entities = List.of(new TestEntity(1L, "a"), new TestEntity(2L, "b"), new TestEntity(3L, "c"));
+        when(query.getResultStream()).thenReturn(entities.stream());
+
+        try (Stream<TestEntity> stream = repository.streamByRsql("", 2)) {
+            assertEquals(entities, stream.toList());
+            verify(entityManager).detach(entities.get(0));
+            verify(entityManager).detach(entities.get(1));
+            verify(entityManager, never()).detach(entities.get(2));
+        }
+
+        // Closing the stream detaches the last, partial batch
+        verify(entityManager).detach(entities.get(2));
+        verify(query).setHint("org.hibernate.fetchSize", 2);
+        verify(query).setHint("org.hibernate.readOnly", true);
+        verify(entityManager, never()).clear();
+    }
+
+    @Test
+    public void testKeysetPageReturnsCursorsWithIdTiebreaker() {
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(1L, "a"), new TestEntity(2L, "b")));
+
+        CursoredPage<TestEntity> page = repository.findByRsqlAfter("", Sort.of(Sort.Order.asc("name")), null, 2);
+
+        assertEquals(List.of("b", 2L), page.getCursor(1).get().elements());
+        verify(query).setMaxResults(2);
+        verify(query, never()).setFirstResult(anyInt());
+    }
+
+    @Test
+    public void testKeysetPageSeeksAfterDecodedCursor() {
+        when(query.getResultList()).thenReturn(List.of());
+        Predicate afterName = mock(Predicate.class);
+        Predicate sameNameAfterId = mock(Predicate.class);
+        when(criteriaBuilder.greaterThan(any(), eq("b"))).thenReturn(afterName);
+        Predicate seek = mock(Predicate.class);
+        when(criteriaBuilder.and(any(Predicate[].class))).thenReturn(sameNameAfterId);
+        when(criteriaBuilder.or(new Predicate[] {afterName, sameNameAfterId})).thenReturn(seek);
+        String encoded = RsqlCursors.encode(Pageable.Cursor.of("b", 2L));
+
+        repository.findByRsqlAfter("", Sort.of(Sort.Order.asc("name")), RsqlCursors.decode(encoded), 2);
+
+        // The decoded id is converted back from its string form
+        verify(criteriaBuilder).greaterThan(any(), eq(2L));
+        verify(criteriaQuery).where(seek);
+    }
+
+    @Test
+    public void testCursorRoundTripsSubMillisecondKeys() {
+        Timestamp timestamp = Timestamp.from(Instant.parse("2024-01-01T00:00:00.000123456Z"));
+        LocalDateTime localDateTime = LocalDateTime.of(2024, 1, 1, 0, 0, 0, 123_456_789);
+        LocalTime localTime = LocalTime.of(12, 0, 0, 1_000);
+
+        List<Object> elements = RsqlCursors.decode(RsqlCursors.encode(
+                Pageable.Cursor.of(timestamp, localDateTime, localTime, 2L))).elements();
+
+        assertEquals(timestamp, RsqlValueConverters.forType(Timestamp.class).apply((String) elements.get(0)));
+        // Providers load timestamp columns of Date fields as Timestamps
+        assertEquals(timestamp, RsqlValueConverters.forType(Date.class).apply((String) elements.get(0)));
+        assertEquals(localDateTime, RsqlValueConverters.forType(LocalDateTime.class).apply((String) elements.get(1)));
+        assertEquals(localTime, RsqlValueConverters.forType(LocalTime.class).apply((String) elements.get(2)));
+        // Epoch milliseconds, as in filters, are still accepted
+        assertEquals(new Timestamp(1704067200000L),
+                RsqlValueConverters.forType(Timestamp.class).apply("1704067200000"));
+        assertEquals(new Date(1704067200000L), RsqlValueConverters.forType(Date.class).apply("1704067200000"));
+    }
+
+    @Test
+    public void testUnsatisfiableFilterSkipsDatabase() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        repository = new TestRepository(entityManager, new RsqlCriteriaBuilder(entityManager, configuration));
+        String rsql = "id==1;id==2";
+
+        assertEquals(List.of(), repository.findByRsql(rsql));
+        assertEquals(0, repository.findByRsql(rsql, Pageable.from(0, 10)).getTotalSize());
+        assertEquals(0, repository.countByRsql(rsql));
+        assertFalse(repository.findSliceByRsql(rsql, Pageable.from(0, 10)).hasNext());
+        assertEquals(0, repository.streamByRsql(rsql, 10).count());
+        assertTrue(repository.findByRsqlAfter(rsql, Sort.UNSORTED, null, 10).getContent().isEmpty());
+        verify(entityManager, never()).createQuery(any(CriteriaQuery.class));
+    }
+
+    @Test
+    public void testSatisfiableFiltersStillQueryWhenOptimized() {
+        RsqlConfiguration configuration = new RsqlConfiguration();
+        configuration.setOptimizeFilters(true);
+        repository = new TestRepository(entityManager, new RsqlCriteriaBuilder(entityManager, configuration));
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        // The database finds 1.0 = 1.00, and may order 'a' before 'B' under its collation
+        for (String rsql : List.of("price==1.0;price==1.00", "price=ge=1.0;price=le=1.00", "name=gt=a;name=lt=B")) {
+            Page<TestEntity> page = repository.findByRsql(rsql, Pageable.from(0, 2));
+
+            assertEquals(rsql, 2, page.getContent().size());
+            assertEquals(rsql, 100, page.getTotalSize());
+            assertEquals(rsql, 100, repository.countByRsql(rsql));
+        }
+        verify(query, times(3)).getResultList();
+        verify(countQuery, times(6)).getSingleResult();
+    }
+
+    @Test
+    public void testInstrumentationObservesEveryStage() {
+        List<String> events = new ArrayList<>();
+        RsqlInstrumentation instrumentation = new RsqlInstrumentation() {
+            @Override
+            public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                return (finalFingerprint, error) -> events.add(stage + " " + entityClass.getSimpleName() + " "
+                        + (finalFingerprint != null ? finalFingerprint : fingerprint) + (error == null ? "" : " failed"));
+            }
+
+            @Override
+            public void registerCache(String name, RsqlCache<?, ?> cache) {
+                events.add("cache " + name);
+            }
+        };
+        repository = new TestRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration(), instrumentation));
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        repository.findByRsql("name==a", Pageable.from(0, 2));
+
+        assertEquals(List.of(
+                "cache parse",
+                "cache plan",
+                "PARSE TestEntity name==?",
+                "COMPILE TestEntity name==?",
+                "PREDICATE TestEntity name==?",
+                "QUERY TestEntity name==?",
+                "COUNT TestEntity name==?"), events);
+
+        events.clear();
+        when(countQuery.getSingleResult()).thenThrow(new IllegalStateException("timeout"));
+        assertThrows(IllegalStateException.class, () -> repository.countByRsql("name!=b"));
+        assertEquals("COUNT TestEntity name!=? failed", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void testInstrumentationReceivesResultCounts() {
+        List<String> results = new ArrayList<>();
+        RsqlInstrumentation instrumentation = new RsqlInstrumentation() {
+            @Override
+            public Observation start(Stage stage, Class<?> entityClass, String fingerprint) {
+                return new Observation() {
+                    @Override
+                    public void annotate(Attribute attribute, long... values) {
+                        results.add(stage + " " + attribute + " " + values[0]);
+                    }
+
+                    @Override
+                    public void stop(String fingerprint, Throwable error) {}
+                };
+            }
+        };
+        repository = new TestRepository(entityManager,
+                new RsqlCriteriaBuilder(entityManager, new RsqlConfiguration(), instrumentation));
+        when(query.getResultList()).thenReturn(List.of(new TestEntity(), new TestEntity()));
+
+        repository.findByRsql("name==a", Pageable.from(0, 2));
+
+        assertEquals(List.of("PARSE NODES 1", "QUERY RESULTS 2", "COUNT RESULTS 100"), results);
+    }
+
+    static class TestRepository extends AbstractRsqlRepository<TestEntity> {
+        TestRepository(EntityManager em, RsqlCriteriaBuilder builder) {
+            super(em, builder, TestEntity.class);
+        }
+
+        @Override
+        protected String getIdProperty() {
+            return "id";
+        }
+    }
+
+    // Simple test entity for testing
+    public static class TestEntity {
+        private Long id;
+        private String name;
+        private BigDecimal price;
+
+        public TestEntity() {}
+
+        public TestEntity(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}